@@ -27,9 +27,9 @@ class RedisInboxIT extends IntegrationTest {
         then:
         await().atMost(5, TimeUnit.SECONDS)
                 .until {
-                    def event = redisStreamsClient.getLatestMessageFromStreamAsJson("orders")
+                    def event = redisStreamsClient.getLatestMessageFromStreamAsJson("ordering.commands")
                     event.get("header").get("messageId").asText() != null
-                    event.get("header").get("channel").asText() == "orders"
+                    event.get("header").get("channel").asText() == "ordering.commands"
                     event.get("header").get("type").asText() == "AddTip"
                     event.get("header").get("itemId").asText() == "any-order-id"
                     event.get("header").get("createdAt").asText() != null
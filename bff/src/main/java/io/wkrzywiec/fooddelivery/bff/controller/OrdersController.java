@@ -5,26 +5,26 @@ import io.wkrzywiec.fooddelivery.bff.controller.model.AddTipDTO;
 import io.wkrzywiec.fooddelivery.bff.controller.model.CreateOrderDTO;
 import io.wkrzywiec.fooddelivery.bff.controller.model.ResponseDTO;
 import io.wkrzywiec.fooddelivery.bff.controller.model.CancelOrderDTO;
+import io.wkrzywiec.fooddelivery.commons.infra.IdGenerator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.UUID;
-
 @RequiredArgsConstructor
 @Slf4j
 @RestController
 public class OrdersController {
 
     private final InboxPublisher inboxPublisher;
+    private final IdGenerator idGenerator;
     private static final String ORDERING_INBOX = "ordering-inbox";
 
     @PostMapping("/orders")
     ResponseEntity<ResponseDTO> createAnOrder(@RequestBody CreateOrderDTO createOrder) {
         log.info("Received request to create an order: {}", createOrder);
         if (createOrder.getId() == null) {
-            var id = UUID.randomUUID().toString();
+            var id = idGenerator.nextId();
             createOrder.setId(id);
             log.info("Generated {} id for a new order", id);
         }
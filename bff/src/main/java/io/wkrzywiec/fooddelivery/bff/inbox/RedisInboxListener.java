@@ -4,6 +4,7 @@ import com.github.sonus21.rqueue.annotation.RqueueListener;
 import io.wkrzywiec.fooddelivery.bff.controller.model.*;
 import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
 import io.wkrzywiec.fooddelivery.commons.incoming.*;
+import io.wkrzywiec.fooddelivery.commons.infra.IdGenerator;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessagePublisher;
@@ -13,7 +14,6 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import java.time.Clock;
-import java.util.UUID;
 
 @RequiredArgsConstructor
 @Component
@@ -21,14 +21,16 @@ import java.util.UUID;
 @Profile("redis")
 public class RedisInboxListener {
 
-    private static final String ORDERS_CHANNEL = "orders";
+    private static final String ORDERING_COMMANDS_CHANNEL = "ordering.commands";
+    private static final String DELIVERY_COMMANDS_CHANNEL = "delivery.commands";
     private final MessagePublisher redisStreamPublisher;
     private final Clock clock;
+    private final IdGenerator idGenerator;
 
     @RqueueListener(value = "ordering-inbox:create")
     public void createOrder(CreateOrderDTO createOrderDTO) {
         log.info("Received a command to create an order: {}", createOrderDTO);
-        var command = command(createOrderDTO.getId(),
+        var command = command(ORDERING_COMMANDS_CHANNEL, createOrderDTO.getId(),
                 new CreateOrder(
                         createOrderDTO.getId(), createOrderDTO.getCustomerId(), createOrderDTO.getRestaurantId(),
                         createOrderDTO.getItems().stream().map(i -> new Item(i.name(), i.amount(), i.pricePerItem())).toList(),
@@ -40,7 +42,7 @@ public class RedisInboxListener {
     @RqueueListener(value = "ordering-inbox:cancel")
     public void updateOrder(CancelOrderDTO cancelOrderDTO) {
         log.info("Received a command to update an order: {}", cancelOrderDTO);
-        var command = command(cancelOrderDTO.getOrderId(), new CancelOrder(cancelOrderDTO.getOrderId(), cancelOrderDTO.getReason()));
+        var command = command(ORDERING_COMMANDS_CHANNEL, cancelOrderDTO.getOrderId(), new CancelOrder(cancelOrderDTO.getOrderId(), cancelOrderDTO.getReason()));
 
         redisStreamPublisher.send(command);
     }
@@ -48,7 +50,7 @@ public class RedisInboxListener {
     @RqueueListener(value = "ordering-inbox:tip")
     public void addTip(AddTipDTO addTipDTO) {
         log.info("Received a command to change a tip for an order: {}", addTipDTO);
-        var command = command(addTipDTO.getOrderId(), new AddTip(addTipDTO.getOrderId(), addTipDTO.getTip()));
+        var command = command(ORDERING_COMMANDS_CHANNEL, addTipDTO.getOrderId(), new AddTip(addTipDTO.getOrderId(), addTipDTO.getTip()));
 
         redisStreamPublisher.send(command);
     }
@@ -56,7 +58,7 @@ public class RedisInboxListener {
     @RqueueListener(value = "delivery-inbox:update")
     public void updateDelivery(UpdateDeliveryDTO updateDeliveryDTO) {
         log.info("Received a command to update a delivery: {}", updateDeliveryDTO);
-        var command = command(updateDeliveryDTO.getOrderId(), commandBody(updateDeliveryDTO));
+        var command = command(DELIVERY_COMMANDS_CHANNEL, updateDeliveryDTO.getOrderId(), commandBody(updateDeliveryDTO));
 
         redisStreamPublisher.send(command);
     }
@@ -74,17 +76,20 @@ public class RedisInboxListener {
     @RqueueListener(value = "delivery-inbox:delivery-man")
     public void changeDeliveryMan(ChangeDeliveryManDTO changeDeliveryManDTO) {
         log.info("Received a command to set a delivery man for an order: {}", changeDeliveryManDTO);
-        var command = command(changeDeliveryManDTO.getOrderId(), commandBody(changeDeliveryManDTO));
+        var command = command(DELIVERY_COMMANDS_CHANNEL, changeDeliveryManDTO.getOrderId(), commandBody(changeDeliveryManDTO));
 
         redisStreamPublisher.send(command);
     }
 
-    private Message command(String orderId, DomainMessageBody commandBody) {
-        return new Message(commandHeader(orderId, commandBody.getClass().getSimpleName()), commandBody);
+    /**
+     * Commands are published on a channel of the service that handles them, not on the shared <code>orders</code> channel.
+     */
+    private Message command(String channel, String orderId, DomainMessageBody commandBody) {
+        return new Message(commandHeader(channel, orderId, commandBody.getClass().getSimpleName()), commandBody);
     }
 
-    private Header commandHeader(String orderId, String type) {
-        return new Header(UUID.randomUUID().toString(), ORDERS_CHANNEL, type, orderId, clock.instant());
+    private Header commandHeader(String channel, String orderId, String type) {
+        return new Header(idGenerator.nextId(), channel, type, orderId, clock.instant());
     }
 
     private DomainMessageBody commandBody(ChangeDeliveryManDTO changeDeliveryManDTO) {
@@ -1,12 +1,13 @@
 package io.wkrzywiec.fooddelivery.bff.repository;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.wkrzywiec.fooddelivery.bff.view.DeliveryView;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -21,29 +22,29 @@ import static java.util.Optional.ofNullable;
 @Profile("redis")
 public class RedisDeliveryViewRepository implements DeliveryViewRepository {
 
+    private static final byte[] DELIVERY_VIEW_KEY = RedisSerializer.string().serialize("delivery-view");
+
     private final RedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper objectMapper;
+    private final MessageCodec codec;
 
     @Override
     public List<DeliveryView> getAllDeliveryViews() {
-        Map<Object, Object> entries = redisTemplate.opsForHash().entries("delivery-view");
+        Map<byte[], byte[]> entries = redisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection ->
+                connection.hashCommands().hGetAll(DELIVERY_VIEW_KEY));
 
-        return entries.values().stream()
-                .map(this::mapJsonStringToDeliveryView)
+        return ofNullable(entries).map(Map::values).orElse(List.of()).stream()
+                .map(this::mapToDeliveryView)
                 .toList();
     }
 
     @Override
     public Optional<DeliveryView> getDeliveryViewById(String orderId) {
-        var deliveryViewOptional = ofNullable(redisTemplate.opsForHash().get("delivery-view", orderId));
-        return deliveryViewOptional.map(this::mapJsonStringToDeliveryView);
+        var deliveryViewOptional = ofNullable(redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.hashCommands().hGet(DELIVERY_VIEW_KEY, RedisSerializer.string().serialize(orderId))));
+        return deliveryViewOptional.map(this::mapToDeliveryView);
     }
 
-    private DeliveryView mapJsonStringToDeliveryView(Object deliveryView) {
-        try {
-            return objectMapper.readValue((String) deliveryView, DeliveryView.class);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+    private DeliveryView mapToDeliveryView(byte[] deliveryView) {
+        return codec.decode(deliveryView, DeliveryView.class);
     }
 }
@@ -0,0 +1,21 @@
+package io.wkrzywiec.fooddelivery.bff.view;
+
+import io.wkrzywiec.fooddelivery.bff.view.outgoing.*;
+import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageTypes;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+
+@Component
+class DeliveryViewMessageTypes implements MessageTypes {
+
+    @Override
+    public Collection<Class<? extends DomainMessageBody>> messageTypes() {
+        return List.of(
+                DeliveryCreated.class, TipAddedToDelivery.class, DeliveryCanceled.class,
+                FoodInPreparation.class, DeliveryManAssigned.class, DeliveryManUnAssigned.class,
+                FoodIsReady.class, FoodWasPickedUp.class, FoodDelivered.class);
+    }
+}
@@ -1,16 +1,22 @@
 package io.wkrzywiec.fooddelivery.bff.view;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.wkrzywiec.fooddelivery.bff.view.outgoing.*;
 import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static java.util.Optional.ofNullable;
 
@@ -20,8 +26,10 @@ import static java.util.Optional.ofNullable;
 @Profile("redis")
 public class DeliveryViewProcessor {
 
+    private static final byte[] DELIVERY_VIEW_KEY = RedisSerializer.string().serialize("delivery-view");
+
     private final RedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper objectMapper;
+    private final MessageCodec codec;
 
     void handle(DomainMessageBody event) {
         log.info("Updating delivery view based on event: {}", event);
@@ -30,16 +38,68 @@ public class DeliveryViewProcessor {
         storeViewModel(deliveryView);
     }
 
+    /**
+     * Applies many events at once, all views they change are fetched with a single HMGET and stored with a single HSET.
+     * If a delivery has no view yet and its events don't start with {@link DeliveryCreated}, nothing is stored
+     * and the batch fails, the same as a single event does, so its records are not acknowledged.
+     */
+    void handle(List<DomainMessageBody> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<DomainMessageBody>> eventsByOrder = new LinkedHashMap<>();
+        events.forEach(event -> eventsByOrder.computeIfAbsent(event.orderId(), orderId -> new ArrayList<>()).add(event));
+        var orderIds = new ArrayList<>(eventsByOrder.keySet());
+
+        List<byte[]> storedViews = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.hashCommands().hMGet(DELIVERY_VIEW_KEY, orderIds.stream().map(RedisSerializer.string()::serialize).toArray(byte[][]::new)));
+
+        Map<byte[], byte[]> updatedViews = new LinkedHashMap<>();
+        for (int i = 0; i < orderIds.size(); i++) {
+            var orderEvents = eventsByOrder.get(orderIds.get(i));
+            var storedView = storedViews == null ? null : storedViews.get(i);
+            if (storedView == null && !(orderEvents.get(0) instanceof DeliveryCreated)) {
+                throw new IllegalStateException(orderEvents.get(0) + " event received, but there is no delivery view for orderId: " + orderIds.get(i));
+            }
+
+            DeliveryView deliveryView = storedView == null ? null : codec.decode(storedView, DeliveryView.class);
+            for (var event : orderEvents) {
+                deliveryView = updateDeliveryViewModel(event, deliveryView);
+            }
+            updatedViews.put(RedisSerializer.string().serialize(orderIds.get(i)), codec.encode(deliveryView));
+        }
+
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            connection.hashCommands().hMSet(DELIVERY_VIEW_KEY, updatedViews);
+            return null;
+        });
+        log.info("{} delivery view(s) were updated based on {} event(s)", updatedViews.size(), events.size());
+    }
+
+    /**
+     * Builds a delivery view from all events of a delivery at once, so it's stored with a single write.
+     */
+    void rebuild(String orderId, List<Message> events) {
+        DeliveryView deliveryView = null;
+        for (Message event : events) {
+            deliveryView = updateDeliveryViewModel(event.body(), deliveryView);
+        }
+
+        if (deliveryView == null) {
+            log.warn("There are no events to rebuild a delivery view of '{}' order", orderId);
+            return;
+        }
+        storeViewModel(deliveryView);
+    }
+
     private DeliveryView getDeliveryView(DomainMessageBody event) {
-        var deliveryViewOptional = ofNullable(redisTemplate.opsForHash().get("delivery-view", event.orderId()));
+        var deliveryViewOptional = ofNullable(redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.hashCommands().hGet(DELIVERY_VIEW_KEY, RedisSerializer.string().serialize(event.orderId()))));
 
         DeliveryView deliveryView = null;
         if (deliveryViewOptional.isPresent()) {
-            try {
-                deliveryView = objectMapper.readValue((String) deliveryViewOptional.get(), DeliveryView.class);
-            } catch (JsonProcessingException e) {
-                throw new RuntimeException(e);
-            }
+            deliveryView = codec.decode(deliveryViewOptional.get(), DeliveryView.class);
         } else {
             if (!(event instanceof DeliveryCreated)) {
                 throw new IllegalStateException(event + " event received, but there is no delivery view for orderId: " + event.orderId());
@@ -50,14 +110,10 @@ public class DeliveryViewProcessor {
 
     private void storeViewModel(DeliveryView deliveryView) {
         log.info("Storing updated deliveryView model: {}", deliveryView);
-        String messageJson = null;
-        try {
-            messageJson = objectMapper.writeValueAsString(deliveryView);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        byte[] payload = codec.encode(deliveryView);
 
-        redisTemplate.opsForHash().put("delivery-view", deliveryView.getOrderId(), messageJson);
+        redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.hashCommands().hSet(DELIVERY_VIEW_KEY, RedisSerializer.string().serialize(deliveryView.getOrderId()), payload));
     }
 
     private DeliveryView updateDeliveryViewModel(DomainMessageBody event, DeliveryView deliveryView) {
@@ -0,0 +1,31 @@
+package io.wkrzywiec.fooddelivery.bff.view;
+
+import io.wkrzywiec.fooddelivery.commons.infra.repository.ReplayEngine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.RedisTemplate;
+
+@Configuration
+@Profile("redis")
+public class DeliveryViewReplayConfig {
+
+    private static final String REPLAY_NAME = "delivery-view";
+
+    @Bean
+    ReplayEngine deliveryViewReplayEngine(RedisTemplate<String, String> redisTemplate, RedisDeliveryEventStore eventStore,
+                                          @Value("${delivery-view.rebuild.parallelism:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}") int parallelism,
+                                          @Value("${delivery-view.rebuild.aggregates-per-second:0}") double aggregatesPerSecond) {
+        return new ReplayEngine(redisTemplate, eventStore, parallelism,
+                ReplayEngine.DEFAULT_SCAN_COUNT, ReplayEngine.DEFAULT_BATCH_SIZE, aggregatesPerSecond);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "delivery-view.rebuild.on-startup", havingValue = "true")
+    ApplicationRunner deliveryViewRebuild(ReplayEngine replayEngine, DeliveryViewProcessor processor) {
+        return args -> replayEngine.replay(REPLAY_NAME, processor::rebuild);
+    }
+}
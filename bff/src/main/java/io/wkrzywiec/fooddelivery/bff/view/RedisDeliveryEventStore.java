@@ -0,0 +1,24 @@
+package io.wkrzywiec.fooddelivery.bff.view;
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import io.wkrzywiec.fooddelivery.commons.infra.repository.RedisEventStore;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gives access to streams of deliveries written by the delivery service, they are only read to rebuild delivery views.
+ */
+@Profile("redis")
+@Component
+class RedisDeliveryEventStore extends RedisEventStore {
+
+    RedisDeliveryEventStore(RedisTemplate<String, String> redisTemplate, MessageCodec messageCodec) {
+        super(redisTemplate, messageCodec);
+    }
+
+    @Override
+    protected String streamPrefix() {
+        return "delivery::";
+    }
+}
@@ -1,11 +1,8 @@
 package io.wkrzywiec.fooddelivery.bff.view;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.wkrzywiec.fooddelivery.bff.view.outgoing.*;
-import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
-import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.ConsumerName;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisBatchStreamListener;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisStreamListener;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -13,14 +10,20 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.connection.stream.MapRecord;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
 @Slf4j
 @Component
 @Profile("redis")
 @RequiredArgsConstructor
-public class RedisOrdersChannelConsumer implements RedisStreamListener {
+public class RedisOrdersChannelConsumer implements RedisBatchStreamListener {
+
+    private static final Set<String> MESSAGE_TYPES = RedisStreamListener.typeNames(new DeliveryViewMessageTypes().messageTypes());
 
     private final DeliveryViewProcessor processor;
-    private final ObjectMapper objectMapper;
+    private final MessageCodec codec;
 
     @Override
     public String streamName() {
@@ -34,47 +37,47 @@ public class RedisOrdersChannelConsumer implements RedisStreamListener {
 
     @Override
     public String consumer() {
-        return "1";
+        return ConsumerName.ofThisInstance();
     }
 
     @Override
-    public void onMessage(MapRecord<String, String, String> message) {
-        log.info("Message received from {} stream: {}", streamName(), message);
-
-        var payloadMessage = message.getValue().get("payload");
+    public Set<String> messageTypes() {
+        return MESSAGE_TYPES;
+    }
 
-        try {
-            var messageAsJson = objectMapper.readTree(payloadMessage);
-            Header header = map(messageAsJson.get("header"), Header.class);
+    @Override
+    public void onMessage(MapRecord<String, String, byte[]> message) {
+        log.info("Message received from {} stream, record id: {}", streamName(), message.getId());
 
-            DomainMessageBody event = switch (header.type()) {
-                case "DeliveryCreated" -> mapMessageBody(messageAsJson, DeliveryCreated.class);
-                case "TipAddedToDelivery" -> mapMessageBody(messageAsJson, TipAddedToDelivery.class);
-                case "DeliveryCanceled" -> mapMessageBody(messageAsJson, DeliveryCanceled.class);
-                case "FoodInPreparation" -> mapMessageBody(messageAsJson, FoodInPreparation.class);
-                case "DeliveryManAssigned" -> mapMessageBody(messageAsJson, DeliveryManAssigned.class);
-                case "DeliveryManUnAssigned" -> mapMessageBody(messageAsJson, DeliveryManUnAssigned.class);
-                case "FoodIsReady" -> mapMessageBody(messageAsJson, FoodIsReady.class);
-                case "FoodWasPickedUp" -> mapMessageBody(messageAsJson, FoodWasPickedUp.class);
-                case "FoodDelivered" -> mapMessageBody(messageAsJson, FoodDelivered.class);
-                default -> null;
-            };
+        var payloadMessage = message.getValue().get("payload");
+        var domainMessage = codec.decodeMessage(payloadMessage);
 
-            if (event == null) {
-                log.info("There is no delivery view handling logic for {} message.", header.type());
-            } else {
-                processor.handle(event);
-            }
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
+        if (domainMessage.body() == null) {
+            log.info("There is no delivery view handling logic for {} message.", domainMessage.header().type());
+        } else {
+            processor.handle(domainMessage.body());
         }
     }
 
-    private <T> T mapMessageBody(JsonNode fullMessage, Class<T> valueType) throws JsonProcessingException {
-        return objectMapper.treeToValue(fullMessage.get("body"), valueType);
+    /**
+     * Views changed by a whole batch are read and written back once.
+     */
+    @Override
+    public void onMessages(List<MapRecord<String, String, byte[]>> messages) {
+        log.info("{} messages received from {} stream", messages.size(), streamName());
+
+        var events = messages.stream()
+                .map(message -> codec.decodeMessage(message.getValue().get("payload")).body())
+                .filter(Objects::nonNull)
+                .toList();
+        processor.handle(events);
     }
 
-    private <T> T map(JsonNode fullMessage, Class<T> valueType) throws JsonProcessingException {
-        return objectMapper.treeToValue(fullMessage, valueType);
+    /**
+     * Views are written back only after all events of a batch were applied.
+     */
+    @Override
+    public boolean atomicBatches() {
+        return true;
     }
 }
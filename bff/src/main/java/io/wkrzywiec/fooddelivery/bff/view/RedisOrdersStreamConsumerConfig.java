@@ -1,7 +1,12 @@
 package io.wkrzywiec.fooddelivery.bff.view;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisMessageConsumerConfig;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisPendingMessageReclaimer;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisRetryQueue;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
@@ -9,15 +14,39 @@ import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.stream.Subscription;
 
+import java.time.Duration;
+
 @Slf4j
 @Configuration
 @Profile("redis")
 public class RedisOrdersStreamConsumerConfig extends RedisMessageConsumerConfig {
 
-    @Bean
+    @Bean(destroyMethod = "cancel")
     public Subscription ordersChannelSubscription(RedisConnectionFactory factory,
                                                   RedisTemplate<String, String> redisTemplate,
-                                                  RedisOrdersChannelConsumer streamListener) {
-        return createSubscription(redisTemplate, factory, streamListener);
+                                                  RedisRetryQueue retryQueue,
+                                                  @Value("${messaging.redis.batch-size:1}") int batchSize) {
+        return createSubscription(redisTemplate, factory, retrying(retryQueue), batchSize);
+    }
+
+    @Bean(destroyMethod = "cancel")
+    public RedisPendingMessageReclaimer ordersChannelReclaimer(RedisTemplate<String, String> redisTemplate,
+                                                               RedisRetryQueue retryQueue,
+                                                               @Value("${messaging.redis.reclaim.min-idle:PT1M}") Duration minIdle,
+                                                               @Value("${messaging.redis.reclaim.interval:PT30S}") Duration interval) {
+        return createReclaimer(redisTemplate, retrying(retryQueue), minIdle, interval);
+    }
+
+    @Bean(destroyMethod = "cancel")
+    public RedisRetryQueue ordersChannelRetryQueue(RedisTemplate<String, String> redisTemplate,
+                                                   RedisOrdersChannelConsumer streamListener,
+                                                   MessageCodec codec,
+                                                   MeterRegistry meterRegistry,
+                                                   @Value("${messaging.redis.lanes:1}") int lanes,
+                                                   @Value("${messaging.redis.retry.max-attempts:5}") int maxAttempts,
+                                                   @Value("${messaging.redis.retry.initial-backoff:PT1S}") Duration initialBackoff,
+                                                   @Value("${messaging.redis.retry.max-backoff:PT5M}") Duration maxBackoff) {
+        return createRetryQueue(redisTemplate, partitioned(streamListener, lanes, codec, meterRegistry),
+                maxAttempts, initialBackoff, maxBackoff);
     }
 }
@@ -6,6 +6,7 @@ import io.wkrzywiec.fooddelivery.bff.controller.model.CreateOrderDTO
 import io.wkrzywiec.fooddelivery.bff.controller.model.ItemDTO
 import io.wkrzywiec.fooddelivery.bff.inbox.InMemoryInboxPublisher
 import io.wkrzywiec.fooddelivery.bff.inbox.InboxPublisher
+import io.wkrzywiec.fooddelivery.commons.infra.IdGenerator
 import org.spockframework.spring.SpringBean
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
@@ -30,6 +31,9 @@ class OrdersControllerSpec extends Specification {
     @SpringBean
     private InboxPublisher inboxPublisher = new InMemoryInboxPublisher()
 
+    @SpringBean
+    private IdGenerator idGenerator = IdGenerator.timeOrdered()
+
     @Autowired
     private MockMvc mockMvc
 
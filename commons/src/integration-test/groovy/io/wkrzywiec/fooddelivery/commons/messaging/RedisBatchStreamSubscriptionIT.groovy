@@ -0,0 +1,106 @@
+package io.wkrzywiec.fooddelivery.commons.messaging
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisBatchStreamListener
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisBatchStreamSubscription
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisMessagePublisherConfig
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory
+import org.springframework.data.redis.connection.stream.MapRecord
+import org.springframework.data.redis.connection.stream.ReadOffset
+import org.springframework.data.redis.connection.stream.StreamRecords
+import org.springframework.data.redis.core.RedisTemplate
+import spock.lang.Subject
+import spock.util.concurrent.PollingConditions
+
+import java.time.Duration
+
+@Subject(RedisBatchStreamSubscription)
+class RedisBatchStreamSubscriptionIT extends CommonsIntegrationTest {
+
+    private final String testChannel = "batch-testing-channel-" + UUID.randomUUID()
+
+    private RedisTemplate<String, String> redisTemplate
+
+    def setup() {
+        def connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(REDIS_HOST, REDIS_PORT))
+        connectionFactory.afterPropertiesSet()
+        redisTemplate = new RedisMessagePublisherConfig().redisTemplate(connectionFactory)
+    }
+
+    def "Handle records read by a single call together and acknowledge them"() {
+        given:
+        (1..5).each { redisTemplate.opsForStream().add(StreamRecords.newRecord().in(testChannel).ofMap(["payload": "message-$it".toString()])) }
+        redisTemplate.opsForStream().createGroup(testChannel, ReadOffset.from("0-0"), "test-group")
+
+        and:
+        def listener = new CollectingListener(testChannel)
+        def subscription = new RedisBatchStreamSubscription(redisTemplate, listener, 10, Duration.ofMillis(100))
+
+        when:
+        subscription.start()
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert listener.batches.size() == 1
+            assert listener.batches[0].size() == 5
+            assert redisTemplate.opsForStream().pending(testChannel, "test-group").totalPendingMessages == 0
+        }
+
+        cleanup:
+        subscription.cancel()
+    }
+
+    def "Acknowledge records of types the listener doesn't handle without handing them over"() {
+        given:
+        ["Handled", "Ignored", "Handled"].each { redisTemplate.opsForStream().add(StreamRecords.newRecord().in(testChannel).ofMap(["payload": "message", "type": it])) }
+        redisTemplate.opsForStream().createGroup(testChannel, ReadOffset.from("0-0"), "test-group")
+
+        and:
+        def listener = new CollectingListener(testChannel, Set.of("Handled"))
+        def subscription = new RedisBatchStreamSubscription(redisTemplate, listener, 10, Duration.ofMillis(100))
+
+        when:
+        subscription.start()
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert listener.batches.flatten().size() == 2
+            assert redisTemplate.opsForStream().pending(testChannel, "test-group").totalPendingMessages == 0
+        }
+
+        cleanup:
+        subscription.cancel()
+    }
+
+    private static class CollectingListener implements RedisBatchStreamListener {
+
+        final String streamName
+        final Set<String> messageTypes
+        final List<List<MapRecord<String, String, byte[]>>> batches = [].asSynchronized()
+
+        CollectingListener(String streamName, Set<String> messageTypes = Set.of()) {
+            this.streamName = streamName
+            this.messageTypes = messageTypes
+        }
+
+        @Override
+        Set<String> messageTypes() { messageTypes }
+
+        @Override
+        String streamName() { streamName }
+
+        @Override
+        String group() { "test-group" }
+
+        @Override
+        String consumer() { "1" }
+
+        @Override
+        void onMessages(List<MapRecord<String, String, byte[]>> messages) {
+            batches << messages
+        }
+
+        @Override
+        void onMessage(MapRecord<String, String, byte[]> message) {}
+    }
+}
@@ -0,0 +1,140 @@
+package io.wkrzywiec.fooddelivery.commons.messaging
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisMessagePublisherConfig
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisPendingMessageReclaimer
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisStreamListener
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory
+import org.springframework.data.redis.connection.stream.Consumer
+import org.springframework.data.redis.connection.stream.MapRecord
+import org.springframework.data.redis.connection.stream.ReadOffset
+import org.springframework.data.redis.connection.stream.StreamOffset
+import org.springframework.data.redis.connection.stream.StreamRecords
+import org.springframework.data.redis.core.RedisTemplate
+import spock.lang.Subject
+
+import java.time.Duration
+
+@Subject(RedisPendingMessageReclaimer)
+class RedisPendingMessageReclaimerIT extends CommonsIntegrationTest {
+
+    private final String testChannel = "reclaim-testing-channel-" + UUID.randomUUID()
+
+    private RedisTemplate<String, String> redisTemplate
+
+    def setup() {
+        def connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(REDIS_HOST, REDIS_PORT))
+        connectionFactory.afterPropertiesSet()
+        redisTemplate = new RedisMessagePublisherConfig().redisTemplate(connectionFactory)
+    }
+
+    def "Handle and acknowledge records left pending by another consumer"() {
+        given: "Records were delivered to a consumer that never acknowledged them"
+        (1..3).each { redisTemplate.opsForStream().add(StreamRecords.newRecord().in(testChannel).ofMap(["payload": "message-$it".toString()])) }
+        redisTemplate.opsForStream().createGroup(testChannel, ReadOffset.from("0-0"), "test-group")
+        redisTemplate.opsForStream().read(Consumer.from("test-group", "crashed"), StreamOffset.create(testChannel, ReadOffset.lastConsumed()))
+
+        and: "Handling of one of them fails"
+        def listener = new CollectingListener(testChannel, "message-2")
+        def reclaimer = new RedisPendingMessageReclaimer(redisTemplate, listener, Duration.ZERO, Duration.ofSeconds(1))
+
+        when:
+        def handled = reclaimer.reclaim()
+
+        then:
+        handled == 2
+        listener.payloads == ["message-1", "message-3"]
+
+        and: "The failed one stays pending for a reclaiming consumer"
+        def pending = redisTemplate.opsForStream().pending(testChannel, "test-group")
+        pending.totalPendingMessages == 1
+        pending.pendingMessagesPerConsumer == ["1": 1L]
+    }
+
+    def "Leave records pending on a consumer that is still reading"() {
+        given:
+        (1..2).each { redisTemplate.opsForStream().add(StreamRecords.newRecord().in(testChannel).ofMap(["payload": "message-$it".toString()])) }
+        redisTemplate.opsForStream().createGroup(testChannel, ReadOffset.from("0-0"), "test-group")
+        redisTemplate.opsForStream().read(Consumer.from("test-group", "running"), StreamOffset.create(testChannel, ReadOffset.lastConsumed()))
+
+        and:
+        def listener = new CollectingListener(testChannel, null)
+        def reclaimer = new RedisPendingMessageReclaimer(redisTemplate, listener, Duration.ofMillis(200), Duration.ofSeconds(1))
+
+        when: "The records are pending for longer than the minimal idle time, but their consumer keeps reading"
+        sleep(300)
+        redisTemplate.opsForStream().add(StreamRecords.newRecord().in(testChannel).ofMap(["payload": "message-3"]))
+        redisTemplate.opsForStream().read(Consumer.from("test-group", "running"), StreamOffset.create(testChannel, ReadOffset.lastConsumed()))
+
+        then:
+        reclaimer.reclaim() == 0
+        redisTemplate.opsForStream().pending(testChannel, "test-group").pendingMessagesPerConsumer == ["running": 3L]
+
+        when: "The consumer stops reading"
+        sleep(300)
+
+        then:
+        reclaimer.reclaim() == 3
+        listener.payloads == ["message-1", "message-2", "message-3"]
+        redisTemplate.opsForStream().pending(testChannel, "test-group").totalPendingMessages == 0
+    }
+
+    def "Acknowledge reclaimed records of types the listener doesn't handle without handling them"() {
+        given:
+        redisTemplate.opsForStream().add(StreamRecords.newRecord().in(testChannel).ofMap(["payload": "message-1", "type": "AddTip"]))
+        redisTemplate.opsForStream().add(StreamRecords.newRecord().in(testChannel).ofMap(["payload": "message-2", "type": "CancelOrder"]))
+        redisTemplate.opsForStream().add(StreamRecords.newRecord().in(testChannel).ofMap(["payload": "message-3"]))
+        redisTemplate.opsForStream().createGroup(testChannel, ReadOffset.from("0-0"), "test-group")
+        redisTemplate.opsForStream().read(Consumer.from("test-group", "crashed"), StreamOffset.create(testChannel, ReadOffset.lastConsumed()))
+
+        and:
+        def listener = new CollectingListener(testChannel, null, ["AddTip"] as Set)
+        def reclaimer = new RedisPendingMessageReclaimer(redisTemplate, listener, Duration.ZERO, Duration.ofSeconds(1))
+
+        when:
+        def handled = reclaimer.reclaim()
+
+        then:
+        handled == 2
+        listener.payloads == ["message-1", "message-3"]
+        listener.types == ["AddTip", null]
+        redisTemplate.opsForStream().pending(testChannel, "test-group").totalPendingMessages == 0
+    }
+
+    private static class CollectingListener implements RedisStreamListener {
+
+        final String streamName
+        final String failingPayload
+        final Set<String> messageTypes
+        final List<String> payloads = []
+        final List<String> types = []
+
+        CollectingListener(String streamName, String failingPayload, Set<String> messageTypes = [] as Set) {
+            this.streamName = streamName
+            this.failingPayload = failingPayload
+            this.messageTypes = messageTypes
+        }
+
+        @Override
+        Set<String> messageTypes() { messageTypes }
+
+        @Override
+        String streamName() { streamName }
+
+        @Override
+        String group() { "test-group" }
+
+        @Override
+        String consumer() { "1" }
+
+        @Override
+        void onMessage(MapRecord<String, String, byte[]> message) {
+            def payload = new String(message.value["payload"])
+            if (payload == failingPayload) {
+                throw new RuntimeException("Failed to handle $payload")
+            }
+            payloads << payload
+            types << message.value["type"]?.with { new String(it) }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package io.wkrzywiec.fooddelivery.commons.messaging
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.JacksonMessageCodec
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageTypeRegistry
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.PartitionedStreamListener
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisBatchStreamListener
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisMessagePublisherConfig
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisRetryQueue
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisStreamListener
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RetryingStreamListener
+import org.springframework.data.domain.Range
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory
+import org.springframework.data.redis.connection.stream.MapRecord
+import org.springframework.data.redis.connection.stream.StreamRecords
+import org.springframework.data.redis.core.RedisTemplate
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder
+import spock.lang.Subject
+
+import java.time.Duration
+
+@Subject(RedisRetryQueue)
+class RedisRetryQueueIT extends CommonsIntegrationTest {
+
+    private final String testChannel = "retry-testing-channel-" + UUID.randomUUID()
+
+    private RedisTemplate<String, String> redisTemplate
+
+    def setup() {
+        def connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(REDIS_HOST, REDIS_PORT))
+        connectionFactory.afterPropertiesSet()
+        redisTemplate = new RedisMessagePublisherConfig().redisTemplate(connectionFactory)
+    }
+
+    def "Retry a failed record until it's moved to a dead letter stream and replay it from there"() {
+        given:
+        def listener = new FailingListener(testChannel, 2)
+        def retryQueue = new RedisRetryQueue(redisTemplate, listener, 2, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(1))
+        def record = StreamRecords.newRecord().in(testChannel).withId("1-0").ofMap(["payload": "message".bytes, "type": "AddTip".bytes, "itemId": "order-1".bytes])
+
+        when: "The record fails to be handled by a stream consumer"
+        new RetryingStreamListener(listener, retryQueue).onMessage(record as MapRecord<String, String, byte[]>)
+
+        and: "Its retry fails as well"
+        def handled = retryQueue.retryDue()
+
+        then:
+        handled == 0
+        retryQueue.deadLetterStream() == testChannel + ".dlq:test-group"
+        retryQueue.deadLetterCount() == 1
+
+        and: "The dead letter has all fields of the record"
+        def deadLetter = redisTemplate.opsForStream().range(retryQueue.deadLetterStream(), Range.unbounded())[0].value
+        deadLetter.subMap(["payload", "type", "itemId", "id", "attempts"]) == ["payload": "message", "type": "AddTip", "itemId": "order-1", "id": testChannel + "/1-0", "attempts": "2"]
+
+        when: "Dead letters are replayed"
+        def replayed = retryQueue.replayDeadLetters()
+
+        and:
+        handled = retryQueue.retryDue()
+
+        then:
+        replayed == 1
+        handled == 1
+        retryQueue.deadLetterCount() == 0
+        listener.payloads == ["message"]
+        listener.records*.value*.keySet() == [["payload", "type", "itemId"] as Set] * 3
+        listener.records*.value*.get("type").collect { new String(it) } == ["AddTip"] * 3
+    }
+
+    def "Park only the failed record of a batch handled one by one"() {
+        given:
+        def listener = new FailingBatchListener(testChannel, "message-2")
+        def retryQueue = new RedisRetryQueue(redisTemplate, listener, 2, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(1))
+        def records = (1..3).collect {
+            StreamRecords.newRecord().in(testChannel).withId("$it-0").ofMap(["payload": "message-$it".toString().bytes]) as MapRecord<String, String, byte[]>
+        }
+
+        when:
+        new RetryingStreamListener(listener, retryQueue).onMessages(records)
+
+        then: "Records before and after the failed one are handled once"
+        listener.payloads == ["message-1", "message-3"]
+
+        when:
+        listener.failingPayload = null
+        def handled = retryQueue.retryDue()
+
+        then:
+        handled == 1
+        listener.payloads == ["message-1", "message-3", "message-2"]
+    }
+
+    def "Drain lanes of a partitioned listener when the retry queue is cancelled"() {
+        given:
+        def delegate = new FailingListener(testChannel, 0)
+        def objectMapper = Jackson2ObjectMapperBuilder.json().build()
+        def codec = new JacksonMessageCodec(objectMapper, new MessageTypeRegistry(objectMapper, []))
+        def listener = new PartitionedStreamListener(delegate, codec, 2, new SimpleMeterRegistry())
+        def retryQueue = new RedisRetryQueue(redisTemplate, listener, 2, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(1))
+        listener.start()
+        retryQueue.start()
+
+        and:
+        def futures = (1..20).collect {
+            listener.dispatch(StreamRecords.newRecord().in(testChannel)
+                    .ofMap(["payload": "message-$it".toString().bytes, "itemId": "order-${it % 2}".toString().bytes]) as MapRecord<String, String, byte[]>)
+        }
+
+        when:
+        retryQueue.cancel()
+
+        then:
+        !retryQueue.isActive()
+        futures.every { it.isDone() && !it.isCompletedExceptionally() }
+        delegate.payloads.size() == 20
+    }
+
+    def "Wait longer before each next attempt"() {
+        given:
+        def retryQueue = new RedisRetryQueue(redisTemplate, new FailingListener(testChannel, 0), 10,
+                Duration.ofSeconds(1), Duration.ofSeconds(10), Duration.ofSeconds(1))
+
+        expect:
+        retryQueue.backoff(attempts) == Duration.ofSeconds(backoff)
+
+        where:
+        attempts | backoff
+        1        | 1
+        2        | 2
+        4        | 8
+        5        | 10
+    }
+
+    private static class FailingBatchListener implements RedisBatchStreamListener {
+
+        final String streamName
+        String failingPayload
+        final List<String> payloads = []
+
+        FailingBatchListener(String streamName, String failingPayload) {
+            this.streamName = streamName
+            this.failingPayload = failingPayload
+        }
+
+        @Override
+        String streamName() { streamName }
+
+        @Override
+        String group() { "test-group" }
+
+        @Override
+        String consumer() { "1" }
+
+        @Override
+        void onMessage(MapRecord<String, String, byte[]> message) {
+            def payload = new String(message.value["payload"])
+            if (payload == failingPayload) {
+                throw new RuntimeException("Failed to handle $payload")
+            }
+            payloads << payload
+        }
+    }
+
+    private static class FailingListener implements RedisStreamListener {
+
+        final String streamName
+        int failures
+        final List<String> payloads = Collections.synchronizedList([])
+        final List<MapRecord<String, String, byte[]>> records = Collections.synchronizedList([])
+
+        FailingListener(String streamName, int failures) {
+            this.streamName = streamName
+            this.failures = failures
+        }
+
+        @Override
+        String streamName() { streamName }
+
+        @Override
+        String group() { "test-group" }
+
+        @Override
+        String consumer() { "1" }
+
+        @Override
+        void onMessage(MapRecord<String, String, byte[]> message) {
+            records << message
+            if (failures-- > 0) {
+                throw new RuntimeException("Failed to handle a message")
+            }
+            payloads << new String(message.value["payload"])
+        }
+    }
+}
@@ -3,14 +3,27 @@ package io.wkrzywiec.fooddelivery.commons.messaging
 import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody
 import io.wkrzywiec.fooddelivery.commons.infra.RedisConfig
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.JacksonMessageCodec
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessagePublisher
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.AsyncMessagePublisher
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.BatchingRedisStreamPublisher
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisAsyncStreamPublisher
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisMessagePublisherConfig
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisStreamPublisher
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.StreamSharding
 import io.wkrzywiec.fooddelivery.commons.infra.RedisStreamTestClient
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.springframework.data.domain.Range
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory
+import org.springframework.data.redis.connection.stream.RecordId
+import org.springframework.data.redis.core.RedisTemplate
 
+import java.time.Duration
 import java.time.Instant
+import java.util.concurrent.TimeUnit
 
 class RedisStreamPublisherIT extends CommonsIntegrationTest {
 
@@ -18,6 +31,9 @@ class RedisStreamPublisherIT extends CommonsIntegrationTest {
 
     private MessagePublisher messagePublisher
     private RedisStreamTestClient redis
+    private RedisTemplate<String, String> redisTemplate
+    private JacksonMessageCodec codec
+    private AsyncMessagePublisher asyncPublisher
 
     def setup() {
         def config = new RedisMessagePublisherConfig()
@@ -25,9 +41,14 @@ class RedisStreamPublisherIT extends CommonsIntegrationTest {
         def connectionFactory = new LettuceConnectionFactory(redisStandaloneConfig)
         connectionFactory.afterPropertiesSet()
         def redisTemplate = config.redisTemplate(connectionFactory)
-        messagePublisher = config.messagePublisher(redisTemplate, new RedisConfig().objectMapper())
+        def codec = new JacksonMessageCodec(new RedisConfig().objectMapper())
+        def asyncPublisher = config.asyncMessagePublisher(connectionFactory, redisTemplate, codec, StreamSharding.NONE, 2, "reject", 1, Duration.ZERO)
+        messagePublisher = config.messagePublisher(asyncPublisher, StreamSharding.NONE)
 
         redis = new RedisStreamTestClient(redisTemplate)
+        this.redisTemplate = redisTemplate
+        this.codec = codec
+        this.asyncPublisher = asyncPublisher
 
         System.out.println("Clearing '$testChannel' stream from old messages")
         redisTemplate.opsForStream().trim(testChannel, 0)
@@ -54,6 +75,70 @@ class RedisStreamPublisherIT extends CommonsIntegrationTest {
         publishedMessage.get("header").get("itemId").asText() == itemId
         publishedMessage.get("header").get("type").asText() == "MessageTestBody"
         publishedMessage.get("body").get("orderId").asText() == itemId
+
+        and: "Header fields are copied to record fields"
+        def record = redisTemplate.opsForStream().reverseRange(testChannel, Range.unbounded(), Limit.limit().count(1))[0]
+        record.value["type"] == "MessageTestBody"
+        record.value["itemId"] == itemId
+        record.value["messageId"] == message.header().messageId()
+    }
+
+    def "Publish messages without waiting for Redis, but not more than a limit at once"() {
+        given:
+        def itemIds = (1..50).collect { UUID.randomUUID().toString() }
+        def messages = itemIds.collect { event(it, new MessageTestBody(it, Instant.now(), BigDecimal.ONE)) }
+
+        when: "Many more messages are published at once than the limit of messages in flight"
+        def published = messages.collect { asyncPublisher.publish(it) }
+        def results = published.collect { it.handle { recordId, error -> recordId ?: error }.get(5, TimeUnit.SECONDS) }
+
+        then: "Messages over the limit are rejected"
+        results.take(2).every { it instanceof RecordId }
+        results.any { it instanceof RuntimeException }
+
+        and: "Accepted ones are published in order"
+        redisTemplate.opsForStream().range(testChannel, Range.unbounded())*.id == results.findAll { it instanceof RecordId }
+    }
+
+    def "Publish messages in pipelined batches in the order they were sent"() {
+        given:
+        def batchingPublisher = new BatchingRedisStreamPublisher(redisTemplate, codec, 8, Duration.ofMillis(50))
+        batchingPublisher.start()
+        def publisher = new RedisStreamPublisher(batchingPublisher, StreamSharding.NONE)
+        def itemIds = (1..20).collect { UUID.randomUUID().toString() }
+        def messages = itemIds.collect { event(it, new MessageTestBody(it, Instant.now(), BigDecimal.ONE)) }
+
+        when:
+        publisher.send(messages)
+        def recordId = publisher.publish(messages[0]).get(5, TimeUnit.SECONDS)
+
+        then:
+        def records = redisTemplate.opsForStream().range(testChannel, Range.unbounded())
+        records.size() == 21
+        records.take(20).collect { new ObjectMapper().readTree(it.value["payload"] as String).get("header").get("itemId").asText() } == itemIds
+        records.last().id == recordId
+
+        cleanup:
+        batchingPublisher.close()
+    }
+
+    def "Reject messages over the limit of messages waiting for a batch"() {
+        given:
+        def publisher = new BatchingRedisStreamPublisher(redisTemplate, codec, 8, Duration.ofMillis(50), 2,
+                RedisAsyncStreamPublisher.Backpressure.REJECT, StreamSharding.NONE)
+        def messages = (1..3).collect { event(it.toString(), new MessageTestBody(it.toString(), Instant.now(), BigDecimal.ONE)) }
+
+        when: "Messages are queued before the publisher is started"
+        def published = messages.collect { publisher.publish(it) }
+        publisher.start()
+
+        then:
+        published.take(2).every { it.get(5, TimeUnit.SECONDS) instanceof RecordId }
+        published.last().isCompletedExceptionally()
+        redisTemplate.opsForStream().size(testChannel) == 2
+
+        cleanup:
+        publisher.close()
     }
 
     private Message event(String itemId, DomainMessageBody eventBody) {
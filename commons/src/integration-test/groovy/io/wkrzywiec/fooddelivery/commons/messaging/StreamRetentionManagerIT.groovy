@@ -0,0 +1,64 @@
+package io.wkrzywiec.fooddelivery.commons.messaging
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisMessagePublisherConfig
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.StreamRetentionManager
+import org.springframework.data.domain.Range
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory
+import org.springframework.data.redis.connection.stream.Consumer
+import org.springframework.data.redis.connection.stream.ReadOffset
+import org.springframework.data.redis.connection.stream.StreamOffset
+import org.springframework.data.redis.connection.stream.StreamReadOptions
+import org.springframework.data.redis.connection.stream.StreamRecords
+import org.springframework.data.redis.core.RedisTemplate
+import spock.lang.Subject
+
+import java.time.Duration
+
+@Subject(StreamRetentionManager)
+class StreamRetentionManagerIT extends CommonsIntegrationTest {
+
+    private final String testChannel = "retention-testing-channel-" + UUID.randomUUID()
+
+    private RedisTemplate<String, String> redisTemplate
+
+    def setup() {
+        def connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(REDIS_HOST, REDIS_PORT))
+        connectionFactory.afterPropertiesSet()
+        redisTemplate = new RedisMessagePublisherConfig().redisTemplate(connectionFactory)
+    }
+
+    def "Trim only records that were handled by all consumer groups"() {
+        given:
+        (1..5).each { redisTemplate.opsForStream().add(StreamRecords.newRecord().in(testChannel).withId("$it-0").ofMap(["payload": "message-$it".toString()])) }
+        redisTemplate.opsForStream().createGroup(testChannel, ReadOffset.from("0-0"), "fast")
+        redisTemplate.opsForStream().createGroup(testChannel, ReadOffset.from("0-0"), "slow")
+
+        and: "One group handled all records, the other got 3 of them and acknowledged 2"
+        def fast = read("fast", 5)
+        redisTemplate.opsForStream().acknowledge(testChannel, "fast", *fast*.id)
+        def slow = read("slow", 3)
+        redisTemplate.opsForStream().acknowledge(testChannel, "slow", slow[0].id, slow[1].id)
+
+        and:
+        def meterRegistry = new SimpleMeterRegistry()
+        def retentionManager = new StreamRetentionManager(redisTemplate, [testChannel], Duration.ZERO, meterRegistry)
+
+        when:
+        def trimmed = retentionManager.trim(testChannel)
+
+        then: "Records older than the pending one are trimmed"
+        trimmed == 2
+        redisTemplate.opsForStream().range(testChannel, Range.unbounded())*.id*.value == ["3-0", "4-0", "5-0"]
+
+        and:
+        meterRegistry.get("messaging.stream.trimmed").tag("stream", testChannel).counter().count() == 2
+        meterRegistry.get("messaging.stream.length").tag("stream", testChannel).gauge().value() == 3
+    }
+
+    private List read(String group, int count) {
+        redisTemplate.opsForStream().read(Consumer.from(group, "1"), StreamReadOptions.empty().count(count),
+                StreamOffset.create(testChannel, ReadOffset.lastConsumed()))
+    }
+}
@@ -0,0 +1,22 @@
+package io.wkrzywiec.fooddelivery.commons.infra;
+
+import java.time.Clock;
+
+/**
+ * Source of ids for new messages and orders. It's injected the same way as {@link Clock}, so tests can control it.
+ */
+public interface IdGenerator {
+
+    String nextId();
+
+    /**
+     * Generator of time-ordered ids based on a system clock.
+     */
+    static IdGenerator timeOrdered() {
+        return TimeOrderedIdGenerator.SYSTEM;
+    }
+
+    static IdGenerator timeOrdered(Clock clock) {
+        return new TimeOrderedIdGenerator(clock);
+    }
+}
@@ -0,0 +1,55 @@
+package io.wkrzywiec.fooddelivery.commons.infra;
+
+import java.time.Clock;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates UUIDs in version 7 layout: 48 bits of a Unix timestamp in milliseconds, a 12-bit counter and 62 random bits,
+ * so ids sort by the time they were created at. Each thread keeps its own counter and random bits come from
+ * {@link ThreadLocalRandom}, so threads don't share any state. Ids of a single thread are strictly increasing,
+ * when the counter runs out within a millisecond the timestamp is moved forward by one.
+ */
+class TimeOrderedIdGenerator implements IdGenerator {
+
+    static final TimeOrderedIdGenerator SYSTEM = new TimeOrderedIdGenerator(Clock.systemUTC());
+
+    private static final int COUNTER_BITS = 12;
+    private static final int MAX_COUNTER = (1 << COUNTER_BITS) - 1;
+    private static final long VERSION = 7L << 12;
+    private static final long VARIANT = 0x8000000000000000L;
+    private static final long RANDOM_MASK = 0x3FFFFFFFFFFFFFFFL;
+
+    private final Clock clock;
+    private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+    TimeOrderedIdGenerator(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public String nextId() {
+        var random = ThreadLocalRandom.current();
+        var current = state.get();
+        var millis = clock.millis();
+
+        if (millis > current.millis) {
+            current.millis = millis;
+            current.counter = random.nextInt(MAX_COUNTER / 2);
+        } else if (current.counter < MAX_COUNTER) {
+            current.counter++;
+        } else {
+            current.millis++;
+            current.counter = random.nextInt(MAX_COUNTER / 2);
+        }
+
+        var mostSignificantBits = (current.millis << 16) | VERSION | current.counter;
+        var leastSignificantBits = VARIANT | (random.nextLong() & RANDOM_MASK);
+        return new UUID(mostSignificantBits, leastSignificantBits).toString();
+    }
+
+    private static class State {
+        private long millis = -1;
+        private int counter;
+    }
+}
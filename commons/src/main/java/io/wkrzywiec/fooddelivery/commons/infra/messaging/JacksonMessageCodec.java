@@ -0,0 +1,202 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Writes values either as JSON or as Smile, a binary JSON that Jackson marks with its own <code>:)\n</code> header.
+ * Payloads larger than a compression threshold are additionally compressed with LZ4 and prefixed with
+ * an <code>LZ4</code> marker followed by the uncompressed length. Anything else is read as plain JSON.
+ * Messages are read token by token, the header first, so their bodies are never parsed into a tree.
+ */
+@Slf4j
+public class JacksonMessageCodec implements MessageCodec {
+
+    public enum Format { JSON, SMILE }
+
+    public static final int NO_COMPRESSION = -1;
+
+    private static final byte[] SMILE_HEADER = {':', ')', '\n'};
+    private static final byte[] LZ4_MARKER = {'L', 'Z', '4'};
+    private static final int LZ4_HEADER_LENGTH = LZ4_MARKER.length + Integer.BYTES;
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper smileMapper;
+    private final ObjectReader headerReader;
+    private final MessageTypeRegistry registry;
+    private final Format format;
+    private final int compressionThreshold;
+    private final LZ4Compressor compressor;
+    private final LZ4FastDecompressor decompressor;
+
+    public JacksonMessageCodec(ObjectMapper jsonMapper) {
+        this(jsonMapper, new MessageTypeRegistry(jsonMapper));
+    }
+
+    public JacksonMessageCodec(ObjectMapper jsonMapper, MessageTypeRegistry registry) {
+        this(jsonMapper, registry, Format.JSON, NO_COMPRESSION);
+    }
+
+    public JacksonMessageCodec(ObjectMapper jsonMapper, MessageTypeRegistry registry, Format format, int compressionThreshold) {
+        this.jsonMapper = jsonMapper;
+        this.smileMapper = Jackson2ObjectMapperBuilder.smile()
+                .factory(new SmileFactory().enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES))
+                .build();
+        this.headerReader = jsonMapper.readerFor(Header.class);
+        this.registry = registry;
+        this.format = format;
+        this.compressionThreshold = compressionThreshold;
+
+        var lz4Factory = LZ4Factory.fastestInstance();
+        this.compressor = lz4Factory.fastCompressor();
+        this.decompressor = lz4Factory.fastDecompressor();
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        try {
+            var mapper = format == Format.SMILE ? smileMapper : jsonMapper;
+            var payload = mapper.writeValueAsBytes(value);
+
+            if (compressionThreshold != NO_COMPRESSION && payload.length > compressionThreshold) {
+                return compress(payload);
+            }
+            return payload;
+        } catch (IOException e) {
+            log.error("Failed to encode value: {}", value);
+            throw new RuntimeException("Encoding error", e);
+        }
+    }
+
+    @Override
+    public <T> T decode(byte[] payload, Class<T> valueType) {
+        try {
+            var uncompressed = decompressIfNeeded(payload);
+            return mapperFor(uncompressed).readValue(uncompressed, valueType);
+        } catch (IOException e) {
+            log.error("Failed to decode payload to '{}' class", valueType.getCanonicalName());
+            throw new RuntimeException("Decoding error", e);
+        }
+    }
+
+    @Override
+    public Message decodeMessage(byte[] payload) {
+        var uncompressed = decompressIfNeeded(payload);
+
+        try (var parser = mapperFor(uncompressed).createParser(uncompressed)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new RuntimeException("Message payload is not an object");
+            }
+
+            Header header = null;
+            DomainMessageBody body = null;
+            TokenBuffer bodyReadAhead = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.getCurrentName();
+                parser.nextToken();
+
+                switch (field) {
+                    case "header" -> header = headerReader.readValue(parser);
+                    case "body" -> {
+                        if (header != null) {
+                            body = readBody(header.type(), parser);
+                        } else {
+                            bodyReadAhead = new TokenBuffer(parser);
+                            bodyReadAhead.copyCurrentStructure(parser);
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+
+            if (header == null) {
+                throw new RuntimeException("Message payload has no header");
+            }
+            if (bodyReadAhead != null) {
+                body = readBody(header.type(), bodyReadAhead.asParser());
+            }
+            return new Message(header, body);
+        } catch (IOException e) {
+            log.error("Failed to decode message payload");
+            throw new RuntimeException("Decoding error", e);
+        }
+    }
+
+    /**
+     * Parsing stops as soon as the header is read.
+     */
+    @Override
+    public Header decodeHeader(byte[] payload) {
+        var uncompressed = decompressIfNeeded(payload);
+
+        try (var parser = mapperFor(uncompressed).createParser(uncompressed)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new RuntimeException("Message payload is not an object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.getCurrentName();
+                parser.nextToken();
+
+                if ("header".equals(field)) {
+                    return headerReader.readValue(parser);
+                }
+                parser.skipChildren();
+            }
+            throw new RuntimeException("Message payload has no header");
+        } catch (IOException e) {
+            log.error("Failed to decode message header");
+            throw new RuntimeException("Decoding error", e);
+        }
+    }
+
+    private DomainMessageBody readBody(String type, JsonParser parser) throws IOException {
+        var reader = registry.readerFor(type);
+        if (reader.isEmpty()) {
+            parser.skipChildren();
+            return null;
+        }
+        return reader.get().readValue(parser);
+    }
+
+    private ObjectMapper mapperFor(byte[] payload) {
+        return startsWith(payload, SMILE_HEADER) ? smileMapper : jsonMapper;
+    }
+
+    private byte[] compress(byte[] payload) {
+        var compressed = new byte[LZ4_HEADER_LENGTH + compressor.maxCompressedLength(payload.length)];
+        ByteBuffer.wrap(compressed)
+                .put(LZ4_MARKER)
+                .putInt(payload.length);
+        var compressedLength = compressor.compress(payload, 0, payload.length, compressed, LZ4_HEADER_LENGTH);
+        return Arrays.copyOf(compressed, LZ4_HEADER_LENGTH + compressedLength);
+    }
+
+    private byte[] decompressIfNeeded(byte[] payload) {
+        if (!startsWith(payload, LZ4_MARKER)) {
+            return payload;
+        }
+        var uncompressedLength = ByteBuffer.wrap(payload, LZ4_MARKER.length, Integer.BYTES).getInt();
+        return decompressor.decompress(payload, LZ4_HEADER_LENGTH, uncompressedLength);
+    }
+
+    private static boolean startsWith(byte[] payload, byte[] prefix) {
+        return payload.length >= prefix.length && Arrays.equals(payload, 0, prefix.length, prefix, 0, prefix.length);
+    }
+}
@@ -1,15 +1,19 @@
 package io.wkrzywiec.fooddelivery.commons.infra.messaging;
 
 import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+import io.wkrzywiec.fooddelivery.commons.infra.IdGenerator;
 
 import java.time.Clock;
-import java.util.UUID;
 
 public record Message(Header header, DomainMessageBody body) {
 
     public static Message message(String channel, Clock clock, DomainMessageBody body) {
+        return message(channel, clock, IdGenerator.timeOrdered(), body);
+    }
+
+    public static Message message(String channel, Clock clock, IdGenerator idGenerator, DomainMessageBody body) {
         return new Message(
-                new Header(UUID.randomUUID().toString(), channel, body.getClass().getSimpleName(), body.orderId(), clock.instant()),
+                new Header(idGenerator.nextId(), channel, body.getClass().getSimpleName(), body.orderId(), clock.instant()),
                 body
         );
     }
@@ -0,0 +1,23 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging;
+
+/**
+ * Turns messages (and other values stored next to them) into bytes stored in Redis and back.
+ * Decoding recognizes every supported format, so entries written in an older format can still be read.
+ */
+public interface MessageCodec {
+
+    byte[] encode(Object value);
+
+    <T> T decode(byte[] payload, Class<T> valueType);
+
+    /**
+     * Reads a message in a single pass, its body is read with a reader registered for a type from the header.
+     * A body of a type that is not registered is skipped and the message is returned without it.
+     */
+    Message decodeMessage(byte[] payload);
+
+    /**
+     * Reads only a header of a message, a body is skipped.
+     */
+    Header decodeHeader(byte[] payload);
+}
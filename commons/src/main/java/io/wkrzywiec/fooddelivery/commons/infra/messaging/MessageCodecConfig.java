@@ -0,0 +1,28 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Configuration
+@Profile("redis")
+public class MessageCodecConfig {
+
+    @Bean
+    public MessageTypeRegistry messageTypeRegistry(ObjectMapper objectMapper, ObjectProvider<MessageTypes> messageTypes) {
+        var types = messageTypes.orderedStream()
+                .flatMap(service -> service.messageTypes().stream())
+                .toList();
+        return new MessageTypeRegistry(objectMapper, types);
+    }
+
+    @Bean
+    public MessageCodec messageCodec(ObjectMapper objectMapper, MessageTypeRegistry messageTypeRegistry,
+                                     @Value("${messaging.codec.format:json}") JacksonMessageCodec.Format format,
+                                     @Value("${messaging.codec.compression-threshold:-1}") int compressionThreshold) {
+        return new JacksonMessageCodec(objectMapper, messageTypeRegistry, format, compressionThreshold);
+    }
+}
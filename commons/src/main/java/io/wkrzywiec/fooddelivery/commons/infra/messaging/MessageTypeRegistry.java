@@ -0,0 +1,41 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Maps message type names, as they are put in {@link Header#type()}, to readers of message bodies.
+ * Readers are created once, together with their deserializers, so they are not looked up for every message.
+ */
+public class MessageTypeRegistry {
+
+    private final Map<String, ObjectReader> readers;
+
+    public MessageTypeRegistry(ObjectMapper objectMapper) {
+        this(objectMapper, List.of());
+    }
+
+    public MessageTypeRegistry(ObjectMapper objectMapper, Collection<Class<? extends DomainMessageBody>> types) {
+        Map<String, ObjectReader> readers = new HashMap<>();
+
+        for (var type : types) {
+            var registered = readers.putIfAbsent(type.getSimpleName(), objectMapper.readerFor(type));
+            if (registered != null && !registered.getValueType().hasRawClass(type)) {
+                throw new RuntimeException("Message type '" + type.getSimpleName() + "' is already registered for "
+                        + registered.getValueType().getRawClass().getCanonicalName() + " class");
+            }
+        }
+        this.readers = Map.copyOf(readers);
+    }
+
+    public Optional<ObjectReader> readerFor(String type) {
+        return Optional.ofNullable(readers.get(type));
+    }
+}
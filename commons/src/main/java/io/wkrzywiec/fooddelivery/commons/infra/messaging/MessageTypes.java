@@ -0,0 +1,14 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging;
+
+import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+
+import java.util.Collection;
+
+/**
+ * Message bodies a service reads, either from a channel or from its event store.
+ * All of them are collected into a {@link MessageTypeRegistry} when the service starts.
+ */
+public interface MessageTypes {
+
+    Collection<Class<? extends DomainMessageBody>> messageTypes();
+}
@@ -0,0 +1,15 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+import org.springframework.data.redis.connection.stream.RecordId;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Publishes a message without waiting for Redis, the future is completed with a record id of the message.
+ * Messages published one after another by a single thread are added to their streams in the same order.
+ */
+public interface AsyncMessagePublisher {
+
+    CompletableFuture<RecordId> publish(Message message);
+}
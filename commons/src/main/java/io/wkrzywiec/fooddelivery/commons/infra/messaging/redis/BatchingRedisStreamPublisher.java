@@ -0,0 +1,173 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects messages sent by all threads for up to a linger time or until there is a max batch size of them,
+ * and publishes them with a single pipeline of XADD commands. Messages are written by a single thread, started
+ * with {@link #start()}, in the order they were sent, so the order of messages on each channel is kept.
+ * <p>
+ * The number of messages waiting to be published is limited, when the limit is reached a
+ * {@link RedisAsyncStreamPublisher.Backpressure} policy decides whether to wait for a free place or to reject a message.
+ */
+@Slf4j
+public class BatchingRedisStreamPublisher implements AsyncMessagePublisher, Runnable, AutoCloseable {
+
+    private static final Duration IDLE_POLL_TIMEOUT = Duration.ofMillis(100);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MessageCodec codec;
+    private final int maxBatchSize;
+    private final Duration linger;
+    private final int maxQueued;
+    private final RedisAsyncStreamPublisher.Backpressure backpressure;
+    private final StreamSharding sharding;
+    private final BlockingQueue<PendingMessage> queue;
+    private final Thread thread;
+    private volatile boolean active = true;
+
+    public BatchingRedisStreamPublisher(RedisTemplate<String, String> redisTemplate, MessageCodec codec,
+                                        int maxBatchSize, Duration linger) {
+        this(redisTemplate, codec, maxBatchSize, linger, RedisAsyncStreamPublisher.DEFAULT_MAX_IN_FLIGHT,
+                RedisAsyncStreamPublisher.Backpressure.BLOCK, StreamSharding.NONE);
+    }
+
+    public BatchingRedisStreamPublisher(RedisTemplate<String, String> redisTemplate, MessageCodec codec,
+                                        int maxBatchSize, Duration linger, int maxQueued,
+                                        RedisAsyncStreamPublisher.Backpressure backpressure, StreamSharding sharding) {
+        this.redisTemplate = redisTemplate;
+        this.codec = codec;
+        this.maxBatchSize = maxBatchSize;
+        this.linger = linger;
+        this.maxQueued = maxQueued;
+        this.backpressure = backpressure;
+        this.sharding = sharding;
+        this.queue = new LinkedBlockingQueue<>(maxQueued);
+        this.thread = new Thread(this, "redis-publisher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    @Override
+    public CompletableFuture<RecordId> publish(Message message) {
+        if (!active) {
+            throw new RuntimeException("Publisher is closed, '" + message.header().type() + "' message can't be published");
+        }
+        var pending = new PendingMessage(message, record(message), new CompletableFuture<>());
+        if (!enqueue(pending)) {
+            return CompletableFuture.failedFuture(new RuntimeException("There are already " + maxQueued
+                    + " messages waiting to be published, '" + message.header().type() + "' message was rejected"));
+        }
+        return pending.published();
+    }
+
+    private boolean enqueue(PendingMessage pending) {
+        if (backpressure == RedisAsyncStreamPublisher.Backpressure.REJECT) {
+            return queue.offer(pending);
+        }
+        try {
+            queue.put(pending);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for queued messages to be published", e);
+        }
+    }
+
+    private ByteRecord record(Message message) {
+        return StreamRecords.newRecord()
+                .in(RedisSerializer.string().serialize(sharding.streamOf(message.header())))
+                .ofBytes(StreamRecordFields.recordFields(codec.encode(message), message.header()));
+    }
+
+    @Override
+    public void run() {
+        while (active || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(IDLE_POLL_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    flush(collectBatch(first));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private List<PendingMessage> collectBatch(PendingMessage first) throws InterruptedException {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        batch.add(first);
+        queue.drainTo(batch, maxBatchSize - batch.size());
+
+        var deadline = System.nanoTime() + linger.toNanos();
+        while (batch.size() < maxBatchSize) {
+            var next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+        return batch;
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        List<Object> recordIds;
+        try {
+            recordIds = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                batch.forEach(pending -> connection.streamCommands().xAdd(pending.record()));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.error("Failed to publish a batch of {} message(s)", batch.size(), e);
+            batch.forEach(pending -> pending.published().completeExceptionally(e));
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            var pending = batch.get(i);
+            if (recordIds.get(i) instanceof RecordId recordId) {
+                pending.published().complete(recordId);
+                log.debug("'{}' message was published on channel: '{}'. Record id: {}",
+                        pending.message().header().type(), pending.message().header().channel(), recordId.getValue());
+            } else {
+                pending.published().completeExceptionally(new RuntimeException("Failed to publish '" + pending.message().header().type()
+                        + "' message on channel: '" + pending.message().header().channel() + "', result: " + recordIds.get(i)));
+            }
+        }
+        log.info("A batch of {} message(s) was published", batch.size());
+    }
+
+    /**
+     * Publishes messages that are still queued and stops.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        active = false;
+        if (thread.isAlive()) {
+            thread.join();
+        }
+    }
+
+    private record PendingMessage(Message message, ByteRecord record, CompletableFuture<RecordId> published) {}
+}
@@ -0,0 +1,39 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import org.springframework.data.redis.stream.Subscription;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Subscriptions of a single listener to all shards of a channel.
+ */
+public class CompositeSubscription implements Subscription {
+
+    private final List<Subscription> subscriptions;
+
+    public CompositeSubscription(List<Subscription> subscriptions) {
+        this.subscriptions = subscriptions;
+    }
+
+    @Override
+    public boolean isActive() {
+        return subscriptions.stream().allMatch(Subscription::isActive);
+    }
+
+    @Override
+    public boolean await(Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        for (var subscription : subscriptions) {
+            if (!subscription.await(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void cancel() {
+        subscriptions.forEach(Subscription::cancel);
+    }
+}
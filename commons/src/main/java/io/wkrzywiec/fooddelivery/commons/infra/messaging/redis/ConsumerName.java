@@ -0,0 +1,37 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Name of a consumer in a consumer group, unique for each running instance of a service, so pending records of
+ * an instance that went down can be told apart from records that are still being handled by others.
+ */
+public final class ConsumerName {
+
+    private static final String INSTANCE = hostname() + "-" + UUID.randomUUID().toString().substring(0, 8);
+
+    private ConsumerName() {
+    }
+
+    /**
+     * A host name, e.g. a pod name, with a random suffix, because a restarted instance may get the same host name.
+     */
+    public static String ofThisInstance() {
+        return INSTANCE;
+    }
+
+    private static String hostname() {
+        return Optional.ofNullable(System.getenv("HOSTNAME"))
+                .filter(hostname -> !hostname.isBlank())
+                .orElseGet(() -> {
+                    try {
+                        return InetAddress.getLocalHost().getHostName();
+                    } catch (UnknownHostException e) {
+                        return "unknown";
+                    }
+                });
+    }
+}
@@ -0,0 +1,282 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.stream.MapRecord;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Spreads records of a stream over a number of lanes, each with its own queue and worker thread. A lane is picked
+ * by a hash of an <code>itemId</code> from a message header, so messages of the same order are handled one after
+ * another in the order they were read, while messages of different orders are handled in parallel.
+ * <p>
+ * Single records are queued and handled asynchronously. A batch is split between lanes and the call returns after
+ * all of them were handled, so the batch is acknowledged only then. When a lane queue is full, reading waits.
+ * <p>
+ * Lane threads run between {@link #start()} and {@link #close()}. Closing stops taking new records and waits
+ * for queued ones to be handled, records that are still queued after a drain timeout stay pending.
+ * <p>
+ * A listener made with {@link #decorated} shares the lanes, so records handed over from a retry queue or a reclaimer
+ * keep their order with the ones read from a stream.
+ */
+@Slf4j
+public class PartitionedStreamListener implements RedisBatchStreamListener, AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    public static final Duration DEFAULT_DRAIN_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final Duration TAKE_TIMEOUT = Duration.ofMillis(100);
+
+    private final RedisStreamListener delegate;
+    private final MessageCodec codec;
+    private final List<Lane> lanes;
+    private final PartitionedStreamListener owner;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean active = true;
+
+    public PartitionedStreamListener(RedisStreamListener delegate, MessageCodec codec, int lanes, MeterRegistry meterRegistry) {
+        this(delegate, codec, lanes, DEFAULT_QUEUE_CAPACITY, meterRegistry);
+    }
+
+    public PartitionedStreamListener(RedisStreamListener delegate, MessageCodec codec, int lanes, int queueCapacity,
+                                     MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.codec = codec;
+        this.lanes = IntStream.range(0, lanes)
+                .mapToObj(number -> new Lane(number, queueCapacity, meterRegistry))
+                .toList();
+        this.owner = this;
+    }
+
+    private PartitionedStreamListener(RedisStreamListener delegate, PartitionedStreamListener owner) {
+        this.delegate = delegate;
+        this.codec = owner.codec;
+        this.lanes = owner.lanes;
+        this.owner = owner;
+    }
+
+    /**
+     * A listener that hands records over to a decorated delegate in the same lanes as this one.
+     */
+    public PartitionedStreamListener decorated(UnaryOperator<RedisStreamListener> decorator) {
+        return new PartitionedStreamListener(decorator.apply(delegate), owner);
+    }
+
+    public void start() {
+        if (owner != this) {
+            owner.start();
+            return;
+        }
+        if (started.compareAndSet(false, true)) {
+            lanes.forEach(lane -> lane.thread.start());
+        }
+    }
+
+    /**
+     * Whether lanes are shared with another listener, which is responsible for draining them.
+     */
+    boolean sharesLanes() {
+        return owner != this;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        stop(DEFAULT_DRAIN_TIMEOUT);
+    }
+
+    /**
+     * Stops taking new records and waits for queued records to be handled. Lanes that didn't drain
+     * in time are interrupted.
+     */
+    public void stop(Duration drainTimeout) throws InterruptedException {
+        if (owner != this) {
+            owner.stop(drainTimeout);
+            return;
+        }
+        active = false;
+        if (!started.get()) {
+            return;
+        }
+        var deadline = System.nanoTime() + drainTimeout.toNanos();
+        for (var lane : lanes) {
+            lane.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            if (lane.thread.isAlive()) {
+                log.warn("Lane {} of '{}' stream didn't drain in {}, {} record(s) stay pending",
+                        lane.number, streamName(), drainTimeout, lane.queue.size());
+                lane.thread.interrupt();
+            }
+        }
+    }
+
+    @Override
+    public String streamName() {
+        return delegate.streamName();
+    }
+
+    @Override
+    public String group() {
+        return delegate.group();
+    }
+
+    @Override
+    public String consumer() {
+        return delegate.consumer();
+    }
+
+    @Override
+    public Set<String> messageTypes() {
+        return delegate.messageTypes();
+    }
+
+    @Override
+    public void onMessage(MapRecord<String, String, byte[]> message) {
+        dispatch(message);
+    }
+
+    /**
+     * Queues a record in its lane, the returned future completes when the record was handled.
+     */
+    public CompletableFuture<Void> dispatch(MapRecord<String, String, byte[]> message) {
+        return laneOf(message).submit(() -> delegate.onMessage(message));
+    }
+
+    /**
+     * Handles a record in its lane and waits until it was handled, failures are thrown like from a plain listener.
+     */
+    public void handle(MapRecord<String, String, byte[]> message) {
+        try {
+            dispatch(message).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    @Override
+    public void onMessages(List<MapRecord<String, String, byte[]>> messages) {
+        Map<Lane, List<MapRecord<String, String, byte[]>>> messagesByLane = new LinkedHashMap<>();
+        messages.forEach(message -> messagesByLane.computeIfAbsent(laneOf(message), lane -> new ArrayList<>()).add(message));
+
+        var handled = messagesByLane.entrySet().stream()
+                .map(entry -> entry.getKey().submit(() -> handle(entry.getValue())))
+                .toArray(CompletableFuture[]::new);
+
+        try {
+            CompletableFuture.allOf(handled).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    private void handle(List<MapRecord<String, String, byte[]>> messages) {
+        if (delegate instanceof RedisBatchStreamListener batchStreamListener) {
+            batchStreamListener.onMessages(messages);
+        } else {
+            messages.forEach(delegate::onMessage);
+        }
+    }
+
+    /**
+     * The <code>itemId</code> is read from a record field, only records published before the header fields were added
+     * have their payload header decoded. A record whose header can't be decoded goes to the first lane, so its listener
+     * decides what to do with it.
+     */
+    private Lane laneOf(MapRecord<String, String, byte[]> message) {
+        var itemId = StreamRecordFields.itemIdOf(message).orElseGet(() -> decodeItemId(message));
+        return lanes.get(itemId == null ? 0 : Math.floorMod(itemId.hashCode(), lanes.size()));
+    }
+
+    private String decodeItemId(MapRecord<String, String, byte[]> message) {
+        try {
+            return codec.decodeHeader(message.getValue().get(StreamRecordFields.PAYLOAD)).itemId();
+        } catch (RuntimeException e) {
+            log.warn("Failed to decode a header of record {} from '{}' stream", message.getId(), streamName(), e);
+            return null;
+        }
+    }
+
+    private class Lane implements Runnable {
+
+        private final int number;
+        private final BlockingQueue<QueuedTask> queue;
+        private final Timer processingTime;
+        private final Thread thread;
+
+        private Lane(int number, int queueCapacity, MeterRegistry meterRegistry) {
+            this.number = number;
+            this.queue = new LinkedBlockingQueue<>(queueCapacity);
+
+            var tags = Tags.of("stream", streamName(), "group", group(), "lane", String.valueOf(number));
+            Gauge.builder("messaging.lane.queue.depth", queue, Collection::size)
+                    .tags(tags)
+                    .description("The number of messages waiting in a lane")
+                    .register(meterRegistry);
+            this.processingTime = Timer.builder("messaging.lane.processing.time")
+                    .tags(tags)
+                    .description("The time of handling messages taken from a lane")
+                    .register(meterRegistry);
+
+            this.thread = new Thread(this, "lane-" + streamName() + "-" + group() + "-" + number);
+            this.thread.setDaemon(true);
+        }
+
+        private CompletableFuture<Void> submit(Runnable task) {
+            if (!active) {
+                throw new IllegalStateException("Lane " + number + " of '" + streamName() + "' stream is stopped");
+            }
+            var queued = new QueuedTask(task, new CompletableFuture<>());
+            try {
+                queue.put(queued);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for a free place in lane " + number, e);
+            }
+            return queued.handled();
+        }
+
+        private void handle(QueuedTask queued) {
+            try {
+                processingTime.record(queued.task());
+                queued.handled().complete(null);
+            } catch (RuntimeException e) {
+                log.error("Failed to handle a message from '{}' stream in lane {}", streamName(), number, e);
+                queued.handled().completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted() && (active || !queue.isEmpty())) {
+                try {
+                    var queued = queue.poll(TAKE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                    if (queued != null) {
+                        handle(queued);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            QueuedTask queued;
+            while ((queued = queue.poll()) != null) {
+                queued.handled().completeExceptionally(
+                        new IllegalStateException("Lane " + number + " of '" + streamName() + "' stream was stopped"));
+            }
+        }
+    }
+
+    private record QueuedTask(Runnable task, CompletableFuture<Void> handled) {
+    }
+}
@@ -0,0 +1,42 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.stream.Subscription;
+
+import java.time.Duration;
+
+/**
+ * Subscription of a {@link PartitionedStreamListener}, cancelling it stops reading first and then drains the lanes.
+ */
+@Slf4j
+public class PartitionedSubscription implements Subscription {
+
+    private final Subscription subscription;
+    private final PartitionedStreamListener listener;
+
+    public PartitionedSubscription(Subscription subscription, PartitionedStreamListener listener) {
+        this.subscription = subscription;
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean isActive() {
+        return subscription.isActive();
+    }
+
+    @Override
+    public boolean await(Duration timeout) throws InterruptedException {
+        return subscription.await(timeout);
+    }
+
+    @Override
+    public void cancel() {
+        subscription.cancel();
+        try {
+            listener.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while draining lanes of '{}' stream", listener.streamName());
+        }
+    }
+}
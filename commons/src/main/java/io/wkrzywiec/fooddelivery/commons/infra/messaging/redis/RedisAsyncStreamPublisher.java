@@ -0,0 +1,120 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.RecordId;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Publishes messages with XADD commands of a reactive Lettuce connection, so a caller doesn't wait for Redis.
+ * The number of messages that were sent but not yet confirmed by Redis is limited, when the limit is reached
+ * a {@link Backpressure} policy decides whether to wait for a free place or to reject a message.
+ */
+@Slf4j
+public class RedisAsyncStreamPublisher implements AsyncMessagePublisher, AutoCloseable {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+
+    public enum Backpressure {
+        BLOCK,
+        REJECT
+    }
+
+    private final ReactiveRedisConnectionFactory connectionFactory;
+    private final MessageCodec codec;
+    private final int maxInFlight;
+    private final Backpressure backpressure;
+    private final StreamSharding sharding;
+    private final Semaphore inFlight;
+    private volatile ReactiveRedisConnection connection;
+
+    public RedisAsyncStreamPublisher(ReactiveRedisConnectionFactory connectionFactory, MessageCodec codec) {
+        this(connectionFactory, codec, DEFAULT_MAX_IN_FLIGHT, Backpressure.BLOCK);
+    }
+
+    public RedisAsyncStreamPublisher(ReactiveRedisConnectionFactory connectionFactory, MessageCodec codec,
+                                     int maxInFlight, Backpressure backpressure) {
+        this(connectionFactory, codec, maxInFlight, backpressure, StreamSharding.NONE);
+    }
+
+    public RedisAsyncStreamPublisher(ReactiveRedisConnectionFactory connectionFactory, MessageCodec codec,
+                                     int maxInFlight, Backpressure backpressure, StreamSharding sharding) {
+        this.connectionFactory = connectionFactory;
+        this.codec = codec;
+        this.maxInFlight = maxInFlight;
+        this.backpressure = backpressure;
+        this.sharding = sharding;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    @Override
+    public CompletableFuture<RecordId> publish(Message message) {
+        if (!acquire()) {
+            return CompletableFuture.failedFuture(new RuntimeException("There are already " + maxInFlight
+                    + " messages being published, '" + message.header().type() + "' message was rejected"));
+        }
+
+        try {
+            var stream = ByteBuffer.wrap(sharding.streamOf(message.header()).getBytes(StandardCharsets.UTF_8));
+            Map<ByteBuffer, ByteBuffer> fields = new LinkedHashMap<>();
+            StreamRecordFields.recordFields(codec.encode(message), message.header())
+                    .forEach((field, value) -> fields.put(ByteBuffer.wrap(field), ByteBuffer.wrap(value)));
+
+            return connection().streamCommands()
+                    .xAdd(stream, fields)
+                    .toFuture()
+                    .whenComplete((recordId, error) -> {
+                        inFlight.release();
+                        if (error != null) {
+                            log.error("Failed to publish '{}' message on channel: '{}'", message.header().type(), message.header().channel(), error);
+                        } else {
+                            log.debug("'{}' message was published on channel: '{}'. Record id: {}",
+                                    message.header().type(), message.header().channel(), recordId.getValue());
+                        }
+                    });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private boolean acquire() {
+        if (backpressure == Backpressure.REJECT) {
+            return inFlight.tryAcquire();
+        }
+        try {
+            inFlight.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for messages in flight to be published", e);
+        }
+    }
+
+    private ReactiveRedisConnection connection() {
+        if (connection == null) {
+            synchronized (this) {
+                if (connection == null) {
+                    connection = connectionFactory.getReactiveConnection();
+                }
+            }
+        }
+        return connection;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+}
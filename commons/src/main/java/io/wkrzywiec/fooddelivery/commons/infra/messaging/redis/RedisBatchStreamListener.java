@@ -0,0 +1,25 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import org.springframework.data.redis.connection.stream.MapRecord;
+
+import java.util.List;
+
+/**
+ * Listener that gets all records read by a single XREADGROUP call at once, they are acknowledged together
+ * after it returns. By default records are handled one by one with {@link #onMessage}, listeners
+ * that can save round trips to Redis by handling them together override {@link #onMessages}.
+ */
+public interface RedisBatchStreamListener extends RedisStreamListener {
+
+    default void onMessages(List<MapRecord<String, String, byte[]>> messages) {
+        messages.forEach(this::onMessage);
+    }
+
+    /**
+     * Whether {@link #onMessages} has no effects when it fails, so a failed batch can be handled once again.
+     * The default loop has already handled records before a failed one, so it's not.
+     */
+    default boolean atomicBatches() {
+        return false;
+    }
+}
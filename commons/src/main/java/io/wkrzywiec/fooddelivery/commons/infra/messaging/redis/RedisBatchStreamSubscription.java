@@ -0,0 +1,142 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.stream.Subscription;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Reads up to a batch size of records from a stream, or from all shards of a channel, with a single blocking XREADGROUP call, hands them all over
+ * to a {@link RedisBatchStreamListener} and acknowledges them with a single XACK. XREADGROUP applies its COUNT
+ * to each stream, so the batch size is split between the shards, and a batch holds at most the batch size
+ * of records, or a single record of each shard if there are more shards than that. Records of types the listener
+ * doesn't handle are only acknowledged. Records of a batch that failed are not acknowledged and stay pending
+ * in the consumer group.
+ */
+@Slf4j
+public class RedisBatchStreamSubscription implements Subscription, Runnable {
+
+    private static final Duration ERROR_BACKOFF = Duration.ofSeconds(1);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisBatchStreamListener listener;
+    private final List<String> streams;
+    private final int countPerStream;
+    private final Duration pollTimeout;
+    private final Thread thread;
+    private volatile boolean active = true;
+
+    public RedisBatchStreamSubscription(RedisTemplate<String, String> redisTemplate, RedisBatchStreamListener listener,
+                                        int batchSize, Duration pollTimeout) {
+        this(redisTemplate, listener, List.of(listener.streamName()), batchSize, pollTimeout);
+    }
+
+    /**
+     * Reads all given streams, e.g. shards of a channel, with a single call.
+     */
+    public RedisBatchStreamSubscription(RedisTemplate<String, String> redisTemplate, RedisBatchStreamListener listener,
+                                        List<String> streams, int batchSize, Duration pollTimeout) {
+        this.redisTemplate = redisTemplate;
+        this.listener = listener;
+        this.streams = streams;
+        this.countPerStream = Math.max(1, batchSize / streams.size());
+        this.pollTimeout = pollTimeout;
+        this.thread = new Thread(this, "redis-batch-" + listener.streamName() + "-" + listener.group());
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (active) {
+            try {
+                poll();
+            } catch (RuntimeException e) {
+                if (!active) {
+                    return;
+                }
+                log.error("Failed to read records from '{}' stream in '{}' group", listener.streamName(), listener.group(), e);
+                sleep(ERROR_BACKOFF);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void poll() {
+        var offsets = streams.stream()
+                .map(stream -> StreamOffset.create(serialize(stream), ReadOffset.lastConsumed()))
+                .toArray(StreamOffset[]::new);
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xReadGroup(
+                        Consumer.from(listener.group(), listener.consumer()),
+                        StreamReadOptions.empty().count(countPerStream).block(pollTimeout),
+                        offsets));
+
+        if (records == null || records.isEmpty()) {
+            return;
+        }
+
+        var messages = records.stream()
+                .map(record -> record.deserialize(RedisSerializer.string(), RedisSerializer.string(), RedisSerializer.byteArray()))
+                .toList();
+        var handled = messages.stream().filter(listener::handles).toList();
+
+        try {
+            if (!handled.isEmpty()) {
+                listener.onMessages(handled);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to handle a batch of {} record(s) from '{}' stream, they stay pending in '{}' group",
+                    records.size(), listener.streamName(), listener.group(), e);
+            return;
+        }
+
+        messages.stream()
+                .collect(Collectors.groupingBy(MapRecord::getStream, Collectors.mapping(MapRecord::getId, Collectors.toList())))
+                .forEach((stream, recordIds) -> redisTemplate.opsForStream().acknowledge(stream, listener.group(), recordIds.toArray(RecordId[]::new)));
+        log.info("{} record(s) from '{}' stream were handled and acknowledged", records.size(), listener.streamName());
+    }
+
+    @Override
+    public boolean isActive() {
+        return active && thread.isAlive();
+    }
+
+    @Override
+    public boolean await(Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        while (!thread.isAlive() && active) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    @Override
+    public void cancel() {
+        active = false;
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] serialize(String value) {
+        return RedisSerializer.string().serialize(value);
+    }
+}
@@ -0,0 +1,50 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+@Slf4j
+@RestController
+@Profile("redis")
+@RequiredArgsConstructor
+@RequestMapping("/admin/dead-letters")
+class RedisDeadLetterController {
+
+    private final List<RedisRetryQueue> retryQueues;
+
+    @GetMapping
+    Map<String, Long> getDeadLetterCounts() {
+        return retryQueues.stream()
+                .collect(Collectors.toMap(RedisRetryQueue::deadLetterStream, RedisRetryQueue::deadLetterCount));
+    }
+
+    @PostMapping("/{stream}/replay")
+    ResponseEntity<Map<String, Long>> replay(@PathVariable String stream) {
+        log.info("Received request to replay dead letters of '{}' stream", stream);
+        return apply(stream, "replayed", RedisRetryQueue::replayDeadLetters);
+    }
+
+    @DeleteMapping("/{stream}")
+    ResponseEntity<Map<String, Long>> purge(@PathVariable String stream) {
+        log.info("Received request to purge dead letters of '{}' stream", stream);
+        return apply(stream, "purged", RedisRetryQueue::purgeDeadLetters);
+    }
+
+    private ResponseEntity<Map<String, Long>> apply(String stream, String result, ToLongFunction<RedisRetryQueue> action) {
+        Optional<RedisRetryQueue> retryQueue = retryQueues.stream()
+                .filter(queue -> queue.deadLetterStream().equals(stream))
+                .findFirst();
+        return retryQueue
+                .map(queue -> ResponseEntity.ok(Map.of(result, action.applyAsLong(queue))))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
@@ -1,46 +1,200 @@
 package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
 
 import io.lettuce.core.RedisBusyException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.RedisSystemException;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
 import org.springframework.data.redis.connection.stream.ReadOffset;
 import org.springframework.data.redis.connection.stream.StreamOffset;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.stream.StreamListener;
 import org.springframework.data.redis.stream.StreamMessageListenerContainer;
 import org.springframework.data.redis.stream.Subscription;
 
+import java.time.Clock;
 import java.time.Duration;
 
 @Slf4j
 public abstract class RedisMessageConsumerConfig {
 
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+    private static final Duration RETRY_POLL_INTERVAL = Duration.ofSeconds(1);
+
+    private StreamSharding sharding = StreamSharding.NONE;
+
+    @Autowired(required = false)
+    public void setStreamSharding(StreamSharding sharding) {
+        this.sharding = sharding;
+    }
+
+    /**
+     * Batch listeners get records in batches when the batch size is greater than one, otherwise one by one.
+     * A listener of a sharded channel is subscribed to all its shards. Lanes of a partitioned listener are started
+     * with the subscription and drained when it's cancelled, unless they are shared with a retry queue, which drains
+     * them when it's cancelled instead.
+     */
+    protected Subscription createSubscription(RedisTemplate<String, String> redisTemplate,
+                                              RedisConnectionFactory factory,
+                                              RedisStreamListener streamListener,
+                                              int batchSize) {
+        if (streamListener instanceof PartitionedStreamListener partitionedListener) {
+            partitionedListener.start();
+            if (partitionedListener.sharesLanes()) {
+                return subscribe(redisTemplate, factory, streamListener, batchSize);
+            }
+            return new PartitionedSubscription(subscribe(redisTemplate, factory, streamListener, batchSize), partitionedListener);
+        }
+        return subscribe(redisTemplate, factory, streamListener, batchSize);
+    }
+
+    private Subscription subscribe(RedisTemplate<String, String> redisTemplate, RedisConnectionFactory factory,
+                                   RedisStreamListener streamListener, int batchSize) {
+        if (batchSize > 1 && streamListener instanceof RedisBatchStreamListener batchStreamListener) {
+            return createBatchSubscription(redisTemplate, batchStreamListener, batchSize);
+        }
+        return createSubscription(redisTemplate, factory, streamListener);
+    }
+
+    /**
+     * With more than one lane, records are handled in parallel, but still in order for each order.
+     */
+    protected RedisStreamListener partitioned(RedisStreamListener streamListener, int lanes,
+                                              MessageCodec codec, MeterRegistry meterRegistry) {
+        if (lanes <= 1) {
+            return streamListener;
+        }
+        return new PartitionedStreamListener(streamListener, codec, lanes, meterRegistry);
+    }
+
+    /**
+     * Failed records are retried in the background by the retry queue instead of blocking a stream. Records are handed
+     * over to the listener of the retry queue, so with lanes, read, retried and reclaimed records share the same lanes.
+     */
+    protected RedisStreamListener retrying(RedisRetryQueue retryQueue) {
+        if (retryQueue.listener() instanceof PartitionedStreamListener partitionedListener) {
+            return partitionedListener.decorated(delegate -> new RetryingStreamListener(delegate, retryQueue));
+        }
+        return new RetryingStreamListener(retryQueue.listener(), retryQueue);
+    }
+
+    protected RedisRetryQueue createRetryQueue(RedisTemplate<String, String> redisTemplate,
+                                               RedisStreamListener streamListener,
+                                               int maxAttempts,
+                                               Duration initialBackoff,
+                                               Duration maxBackoff) {
+        if (streamListener instanceof PartitionedStreamListener partitionedListener) {
+            partitionedListener.start();
+        }
+        var retryQueue = new RedisRetryQueue(redisTemplate, streamListener, maxAttempts, initialBackoff, maxBackoff,
+                RETRY_POLL_INTERVAL, Clock.systemUTC());
+        retryQueue.start();
+        return retryQueue;
+    }
+
+    protected Subscription createBatchSubscription(RedisTemplate<String, String> redisTemplate,
+                                                   RedisBatchStreamListener streamListener,
+                                                   int batchSize) {
+        var streams = sharding.streamsOf(streamListener.streamName());
+        streams.forEach(stream -> createConsumerGroup(redisTemplate, stream, streamListener.group()));
+        var subscription = new RedisBatchStreamSubscription(redisTemplate, streamListener, streams, batchSize, POLL_TIMEOUT);
+        subscription.start();
+        return subscription;
+    }
+
     protected Subscription createSubscription(RedisTemplate<String, String> redisTemplate,
                                               RedisConnectionFactory factory,
                                               RedisStreamListener streamListener) {
-        createConsumerGroup(redisTemplate, streamListener);
+        var streams = sharding.streamsOf(streamListener.streamName());
+        streams.forEach(stream -> createConsumerGroup(redisTemplate, stream, streamListener.group()));
         var options = StreamMessageListenerContainer
                 .StreamMessageListenerContainerOptions
                 .builder()
-                .pollTimeout(Duration.ofSeconds(1))
+                .pollTimeout(POLL_TIMEOUT)
+                .<String, byte[]>hashValueSerializer(RedisSerializer.byteArray())
                 .build();
 
         var listenerContainer = StreamMessageListenerContainer.create(factory,options);
-        var subscription = listenerContainer.receiveAutoAck(
-                Consumer.from(streamListener.group(), streamListener.consumer()),
-                StreamOffset.create(streamListener.streamName(), ReadOffset.lastConsumed()), streamListener);
+        var subscriptions = streams.stream()
+                .map(stream -> listenerContainer.receive(
+                        Consumer.from(streamListener.group(), streamListener.consumer()),
+                        StreamOffset.create(stream, ReadOffset.lastConsumed()),
+                        acknowledging(redisTemplate, streamListener)))
+                .toList();
         listenerContainer.start();
-        return subscription;
+        return subscriptions.size() == 1 ? subscriptions.get(0) : new CompositeSubscription(subscriptions);
+    }
+
+    /**
+     * Records that were not acknowledged, because handling them failed or a service went down, are taken over
+     * after being idle for a minimal idle time. Running consumers read at least once per poll timeout, so a shorter
+     * minimal idle time would take over records from consumers that are still handling them.
+     */
+    protected RedisPendingMessageReclaimer createReclaimer(RedisTemplate<String, String> redisTemplate,
+                                                           RedisStreamListener streamListener,
+                                                           Duration minIdle,
+                                                           Duration interval) {
+        if (minIdle.compareTo(POLL_TIMEOUT) <= 0) {
+            throw new IllegalArgumentException("Minimal idle time of pending records of '" + streamListener.streamName()
+                    + "' stream has to be longer than " + POLL_TIMEOUT + ", but was " + minIdle);
+        }
+        var streams = sharding.streamsOf(streamListener.streamName());
+        streams.forEach(stream -> createConsumerGroup(redisTemplate, stream, streamListener.group()));
+        var reclaimer = new RedisPendingMessageReclaimer(redisTemplate, streamListener, streams, minIdle, interval,
+                RedisPendingMessageReclaimer.DEFAULT_COUNT);
+        reclaimer.start();
+        return reclaimer;
+    }
+
+    /**
+     * A record is acknowledged only after it was handled, otherwise it stays pending in a consumer group.
+     * Records of types the listener doesn't handle are acknowledged right away.
+     */
+    private StreamListener<String, MapRecord<String, String, byte[]>> acknowledging(RedisTemplate<String, String> redisTemplate,
+                                                                                     RedisStreamListener streamListener) {
+        return message -> {
+            if (!streamListener.handles(message)) {
+                acknowledge(redisTemplate, streamListener, message);
+                return;
+            }
+
+            if (streamListener instanceof PartitionedStreamListener partitionedListener) {
+                partitionedListener.dispatch(message).thenRun(() -> acknowledge(redisTemplate, streamListener, message));
+                return;
+            }
+
+            try {
+                streamListener.onMessage(message);
+            } catch (RuntimeException e) {
+                log.error("Failed to handle record {} from '{}' stream, it stays pending in '{}' group",
+                        message.getId(), streamListener.streamName(), streamListener.group(), e);
+                return;
+            }
+            acknowledge(redisTemplate, streamListener, message);
+        };
+    }
+
+    private void acknowledge(RedisTemplate<String, String> redisTemplate, RedisStreamListener streamListener,
+                             MapRecord<String, String, byte[]> message) {
+        redisTemplate.opsForStream().acknowledge(message.getStream(), streamListener.group(), message.getId());
     }
 
     protected void createConsumerGroup(RedisTemplate<String, String> redisTemplate, RedisStreamListener streamListener) {
+        createConsumerGroup(redisTemplate, streamListener.streamName(), streamListener.group());
+    }
+
+    protected void createConsumerGroup(RedisTemplate<String, String> redisTemplate, String stream, String group) {
         try {
-            redisTemplate.opsForStream().createGroup(streamListener.streamName(), streamListener.group());
+            redisTemplate.opsForStream().createGroup(stream, group);
         } catch (RedisSystemException e) {
             var cause = e.getRootCause();
             if (cause != null && RedisBusyException.class.equals(cause.getClass())) {
-                log.info("STREAM - Redis group already exists, skipping Redis group creation: {}", streamListener.group());
+                log.info("STREAM - Redis group already exists, skipping Redis group creation: {}", group);
             } else {
                 throw e;
             }
@@ -1,21 +1,55 @@
 package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessagePublisher;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
+import java.util.Set;
+
 @Configuration
 @Profile("redis")
 public class RedisMessagePublisherConfig {
 
     @Bean
-    public MessagePublisher messagePublisher(RedisTemplate<String, String> redisTemplate, ObjectMapper objectMapper) {
-        return new RedisStreamPublisher(redisTemplate, objectMapper);
+    public RedisStreamPublisher messagePublisher(AsyncMessagePublisher asyncMessagePublisher, StreamSharding streamSharding) {
+        return new RedisStreamPublisher(asyncMessagePublisher, streamSharding);
+    }
+
+    /**
+     * With a max batch size greater than one, messages are published in pipelined batches. Both publishers limit
+     * the number of messages waiting for Redis with the same max in flight and backpressure policy.
+     */
+    @Bean
+    public AsyncMessagePublisher asyncMessagePublisher(ReactiveRedisConnectionFactory connectionFactory, RedisTemplate<String, String> redisTemplate,
+                                                       MessageCodec messageCodec, StreamSharding streamSharding,
+                                                       @Value("${messaging.redis.publisher.max-in-flight:1000}") int maxInFlight,
+                                                       @Value("${messaging.redis.publisher.backpressure:block}") String backpressure,
+                                                       @Value("${messaging.redis.publisher.max-batch-size:1}") int maxBatchSize,
+                                                       @Value("${messaging.redis.publisher.linger:PT0.005S}") Duration linger) {
+        var backpressurePolicy = RedisAsyncStreamPublisher.Backpressure.valueOf(backpressure.trim().toUpperCase());
+        if (maxBatchSize > 1) {
+            var publisher = new BatchingRedisStreamPublisher(redisTemplate, messageCodec, maxBatchSize, linger, maxInFlight,
+                    backpressurePolicy, streamSharding);
+            publisher.start();
+            return publisher;
+        }
+        return new RedisAsyncStreamPublisher(connectionFactory, messageCodec, maxInFlight, backpressurePolicy, streamSharding);
+    }
+
+    /**
+     * With more than one shard, messages of sharded channels are spread over that many streams.
+     */
+    @Bean
+    public StreamSharding streamSharding(@Value("${messaging.redis.sharding.channels:orders}") Set<String> channels,
+                                         @Value("${messaging.redis.sharding.shards:1}") int shards) {
+        return new StreamSharding(channels, shards);
     }
 
     @Bean
@@ -0,0 +1,227 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.stream.Subscription;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Takes over records that stay pending in a consumer group for longer than a minimal idle time on a consumer that
+ * stopped reading for at least as long, e.g. when its instance crashed. Pending entries are claimed every interval,
+ * handed over to a listener one by one and acknowledged if they were handled. A record that failed again stays pending
+ * and is claimed by another instance after the idle time. Records of types the listener doesn't handle are only
+ * acknowledged, the same as when they are read from a stream.
+ */
+@Slf4j
+public class RedisPendingMessageReclaimer implements Subscription, Runnable {
+
+    public static final int DEFAULT_COUNT = 100;
+
+    /**
+     * Claims entries only from other consumers that didn't read from a stream for the minimal idle time, so entries
+     * waiting in lanes of a consumer that is still running are left to it. Before Redis 7.2 reads that return nothing
+     * don't count, so a running consumer of a quiet stream looks idle as well. Consumers gone for that long without
+     * pending entries are removed from a group. Entries that were deleted from a stream can't be handled anymore,
+     * so they are acknowledged right away. Other entries are returned with all their fields.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLAIM_SCRIPT = RedisScript.of("""
+            local group, consumer, min_idle, count = ARGV[1], ARGV[2], tonumber(ARGV[3]), tonumber(ARGV[4])
+            local result = {}
+            for _, info in ipairs(redis.call('XINFO', 'CONSUMERS', KEYS[1], group)) do
+                local details = {}
+                for i = 1, #info, 2 do
+                    details[info[i]] = info[i + 1]
+                end
+                if details['name'] ~= consumer and details['idle'] >= min_idle then
+                    if details['pending'] == 0 then
+                        redis.call('XGROUP', 'DELCONSUMER', KEYS[1], group, details['name'])
+                    elseif #result < count then
+                        local entries = redis.call('XPENDING', KEYS[1], group, 'IDLE', min_idle, '-', '+', count - #result, details['name'])
+                        for _, entry in ipairs(entries) do
+                            local claimed = redis.call('XCLAIM', KEYS[1], group, consumer, min_idle, entry[1])[1]
+                            if type(claimed) == 'table' and type(claimed[2]) == 'table' then
+                                table.insert(result, claimed)
+                            else
+                                redis.call('XACK', KEYS[1], group, entry[1])
+                            end
+                        end
+                    end
+                end
+            end
+            return result
+            """, List.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisStreamListener listener;
+    private final List<String> streams;
+    private final Duration minIdle;
+    private final Duration interval;
+    private final int count;
+    private final Thread thread;
+    private volatile boolean active = true;
+
+    public RedisPendingMessageReclaimer(RedisTemplate<String, String> redisTemplate, RedisStreamListener listener,
+                                        Duration minIdle, Duration interval) {
+        this(redisTemplate, listener, List.of(listener.streamName()), minIdle, interval, DEFAULT_COUNT);
+    }
+
+    /**
+     * Reclaims records of all given streams, e.g. shards of a channel.
+     */
+    public RedisPendingMessageReclaimer(RedisTemplate<String, String> redisTemplate, RedisStreamListener listener, List<String> streams,
+                                        Duration minIdle, Duration interval, int count) {
+        this.redisTemplate = redisTemplate;
+        this.listener = listener;
+        this.streams = streams;
+        this.minIdle = minIdle;
+        this.interval = interval;
+        this.count = count;
+        this.thread = new Thread(this, "redis-reclaim-" + listener.streamName() + "-" + listener.group());
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (active) {
+            try {
+                reclaim();
+            } catch (RuntimeException e) {
+                if (!active) {
+                    return;
+                }
+                log.error("Failed to reclaim pending records of '{}' stream in '{}' group", listener.streamName(), listener.group(), e);
+            }
+            sleep(interval);
+        }
+    }
+
+    /**
+     * Claims and handles all records that are idle for long enough, returns how many of them were handled.
+     */
+    public int reclaim() {
+        var handled = 0;
+        for (var stream : streams) {
+            handled += reclaim(stream);
+        }
+
+        if (handled > 0) {
+            log.info("{} pending record(s) of '{}' stream were reclaimed and handled in '{}' group", handled, listener.streamName(), listener.group());
+        }
+        return handled;
+    }
+
+    private int reclaim(String stream) {
+        var handled = 0;
+        List<Object> claimed;
+        do {
+            claimed = claim(stream);
+            for (var entry : claimed) {
+                if (handle(record(stream, (List<?>) entry))) {
+                    handled++;
+                }
+            }
+        } while (active && claimed.size() == count);
+        return handled;
+    }
+
+    private static MapRecord<String, String, byte[]> record(String stream, List<?> entry) {
+        var fields = (List<?>) entry.get(1);
+        Map<String, byte[]> values = new LinkedHashMap<>();
+        for (int i = 0; i < fields.size(); i += 2) {
+            values.put(RedisSerializer.string().deserialize((byte[]) fields.get(i)), (byte[]) fields.get(i + 1));
+        }
+        return StreamRecords.newRecord()
+                .in(stream)
+                .withId(RedisSerializer.string().deserialize((byte[]) entry.get(0)))
+                .ofMap(values);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private List<Object> claim(String stream) {
+        return redisTemplate.execute(CLAIM_SCRIPT, RedisSerializer.string(), (RedisSerializer) RedisSerializer.byteArray(),
+                List.of(stream), listener.group(), listener.consumer(), String.valueOf(minIdle.toMillis()), String.valueOf(count));
+    }
+
+    private boolean handle(MapRecord<String, String, byte[]> record) {
+        if (!listener.handles(record)) {
+            acknowledge(record);
+            return false;
+        }
+
+        try {
+            if (listener instanceof PartitionedStreamListener partitionedListener) {
+                partitionedListener.handle(record);
+            } else {
+                listener.onMessage(record);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to handle reclaimed record {} from '{}' stream, it stays pending in '{}' group",
+                    record.getId(), record.getStream(), listener.group(), e);
+            return false;
+        }
+        acknowledge(record);
+        return true;
+    }
+
+    private void acknowledge(MapRecord<String, String, byte[]> record) {
+        redisTemplate.opsForStream().acknowledge(record.getStream(), listener.group(), record.getId());
+    }
+
+    @Override
+    public boolean isActive() {
+        return active && thread.isAlive();
+    }
+
+    @Override
+    public boolean await(Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        while (!thread.isAlive() && active) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Stops reclaiming and waits for records that are being handled to be acknowledged.
+     */
+    @Override
+    public void cancel() {
+        active = false;
+        LockSupport.unpark(thread);
+        try {
+            if (thread.isAlive()) {
+                thread.join(PartitionedStreamListener.DEFAULT_DRAIN_TIMEOUT.toMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while stopping reclaiming records of '{}' stream", listener.streamName());
+        }
+    }
+
+    /**
+     * Sleeps until the duration passes or the reclaimer is cancelled.
+     */
+    private void sleep(Duration duration) {
+        var deadline = System.nanoTime() + duration.toNanos();
+        while (active && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(deadline - System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.stream.Subscription;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records that a listener failed to handle are parked in a <code>retries::[stream]:[group]</code> hash and scheduled
+ * in a <code>retries-schedule::[stream]:[group]</code> sorted set by the time of their next attempt. A background
+ * thread hands over due records to the listener again, with an exponential backoff between attempts. After the last
+ * failed attempt a record is moved to a <code>[stream].dlq:[group]</code> dead letter stream, from which it can
+ * be replayed or purged.
+ * <p>
+ * A due record is leased for a while instead of being removed, so it's retried again if a service went down
+ * while handling it. Records are kept as <code>[stream]/[record id]</code>, as ids of records from different
+ * shards of a channel may be the same. Fields other than a payload, like a type or an item id, are kept packed
+ * with MessagePack next to it, so a retried or replayed record has all fields of the original one.
+ */
+@Slf4j
+public class RedisRetryQueue implements Subscription, Runnable {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofSeconds(1);
+    public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofMinutes(5);
+
+    private static final Duration LEASE = Duration.ofMinutes(1);
+    private static final int COUNT = 100;
+    private static final String ATTEMPTS_SUFFIX = "#attempts";
+    private static final String MEMBER_SEPARATOR = "/";
+
+    private static final RedisScript<String> PARK_SCRIPT = RedisScript.of("""
+            local payload, fields = '', {}
+            for i = 4, #ARGV, 2 do
+                if ARGV[i] == 'payload' then
+                    payload = ARGV[i + 1]
+                else
+                    table.insert(fields, ARGV[i])
+                    table.insert(fields, ARGV[i + 1])
+                end
+            end
+            redis.call('HSET', KEYS[2], ARGV[1], payload, ARGV[1] .. '#attempts', ARGV[2], ARGV[1] .. '#fields', cmsgpack.pack(fields))
+            redis.call('ZADD', KEYS[1], ARGV[3], ARGV[1])
+            return ARGV[2]
+            """, String.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> LEASE_DUE_SCRIPT = RedisScript.of("""
+            local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[3])
+            local result = {}
+            for _, id in ipairs(ids) do
+                local values = redis.call('HMGET', KEYS[2], id, id .. '#attempts', id .. '#fields')
+                if values[1] then
+                    redis.call('ZADD', KEYS[1], ARGV[2], id)
+                    local fields = values[3] and cmsgpack.unpack(values[3]) or {}
+                    table.insert(fields, 'payload')
+                    table.insert(fields, values[1])
+                    table.insert(result, { id, values[2] or '0', fields })
+                else
+                    redis.call('ZREM', KEYS[1], id)
+                end
+            end
+            return result
+            """, List.class);
+
+    private static final RedisScript<String> COMPLETE_SCRIPT = RedisScript.of("""
+            redis.call('ZREM', KEYS[1], ARGV[1])
+            redis.call('HDEL', KEYS[2], ARGV[1], ARGV[1] .. '#attempts', ARGV[1] .. '#fields')
+            return ARGV[1]
+            """, String.class);
+
+    /**
+     * A dead letter has all fields of a record, besides its id, the number of attempts and the last error.
+     */
+    private static final RedisScript<String> DEAD_LETTER_SCRIPT = RedisScript.of("""
+            local entry = { 'id', ARGV[1], 'attempts', ARGV[2], 'error', ARGV[3] }
+            for i = 4, #ARGV do
+                table.insert(entry, ARGV[i])
+            end
+            redis.call('XADD', KEYS[3], '*', unpack(entry))
+            redis.call('ZREM', KEYS[1], ARGV[1])
+            redis.call('HDEL', KEYS[2], ARGV[1], ARGV[1] .. '#attempts', ARGV[1] .. '#fields')
+            return ARGV[1]
+            """, String.class);
+
+    private static final RedisScript<String> REPLAY_SCRIPT = RedisScript.of("""
+            local entries = redis.call('XRANGE', KEYS[3], '-', '+', 'COUNT', ARGV[2])
+            for _, entry in ipairs(entries) do
+                local id, payload, fields = nil, nil, {}
+                for i = 1, #entry[2], 2 do
+                    local name, value = entry[2][i], entry[2][i + 1]
+                    if name == 'id' then
+                        id = value
+                    elseif name == 'payload' then
+                        payload = value
+                    elseif name ~= 'attempts' and name ~= 'error' then
+                        table.insert(fields, name)
+                        table.insert(fields, value)
+                    end
+                end
+                redis.call('HSET', KEYS[2], id, payload, id .. '#attempts', 0, id .. '#fields', cmsgpack.pack(fields))
+                redis.call('ZADD', KEYS[1], ARGV[1], id)
+                redis.call('XDEL', KEYS[3], entry[1])
+            end
+            return tostring(#entries)
+            """, String.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisStreamListener listener;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration pollInterval;
+    private final Clock clock;
+    private final Thread thread;
+    private volatile boolean active = true;
+
+    public RedisRetryQueue(RedisTemplate<String, String> redisTemplate, RedisStreamListener listener,
+                           int maxAttempts, Duration initialBackoff, Duration maxBackoff, Duration pollInterval) {
+        this(redisTemplate, listener, maxAttempts, initialBackoff, maxBackoff, pollInterval, Clock.systemUTC());
+    }
+
+    public RedisRetryQueue(RedisTemplate<String, String> redisTemplate, RedisStreamListener listener,
+                           int maxAttempts, Duration initialBackoff, Duration maxBackoff, Duration pollInterval,
+                           Clock clock) {
+        this.redisTemplate = redisTemplate;
+        this.listener = listener;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.pollInterval = pollInterval;
+        this.clock = clock;
+        this.thread = new Thread(this, "redis-retry-" + listener.streamName() + "-" + listener.group());
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public RedisStreamListener listener() {
+        return listener;
+    }
+
+    public String deadLetterStream() {
+        return listener.streamName() + ".dlq:" + listener.group();
+    }
+
+    /**
+     * Schedules the first retry of a record that failed to be handled by the listener.
+     */
+    public void park(MapRecord<String, String, byte[]> record, RuntimeException error) {
+        failed(record.getStream() + MEMBER_SEPARATOR + record.getId().getValue(), record.getValue(), 1, error);
+    }
+
+    @Override
+    public void run() {
+        while (active) {
+            try {
+                retryDue();
+            } catch (RuntimeException e) {
+                if (!active) {
+                    return;
+                }
+                log.error("Failed to retry records of '{}' stream in '{}' group", listener.streamName(), listener.group(), e);
+            }
+            sleep(pollInterval);
+        }
+    }
+
+    /**
+     * Hands over all records whose next attempt is due, returns how many of them were handled.
+     */
+    public int retryDue() {
+        var handled = 0;
+        List<List<Object>> due;
+        do {
+            due = leaseDue();
+            for (var leased : due) {
+                if (retry(deserialize((byte[]) leased.get(0)), Integer.parseInt(deserialize((byte[]) leased.get(1))), fields((List<?>) leased.get(2)))) {
+                    handled++;
+                }
+            }
+        } while (active && due.size() == COUNT);
+        return handled;
+    }
+
+    public long deadLetterCount() {
+        return Optional.ofNullable(redisTemplate.opsForStream().size(deadLetterStream())).orElse(0L);
+    }
+
+    /**
+     * Moves all dead letters back to retries, due right away and with their attempts counted from scratch.
+     */
+    public long replayDeadLetters() {
+        long replayed = 0;
+        long moved;
+        do {
+            moved = Long.parseLong(execute(REPLAY_SCRIPT, serialize(String.valueOf(clock.millis())), serialize(String.valueOf(COUNT))));
+            replayed += moved;
+        } while (moved == COUNT);
+
+        log.info("{} dead letter(s) of '{}' stream were moved back to retries", replayed, deadLetterStream());
+        return replayed;
+    }
+
+    public long purgeDeadLetters() {
+        var purged = deadLetterCount();
+        redisTemplate.delete(deadLetterStream());
+        log.info("{} dead letter(s) of '{}' stream were purged", purged, deadLetterStream());
+        return purged;
+    }
+
+    private boolean retry(String recordId, int attempts, Map<String, byte[]> fields) {
+        var separator = recordId.lastIndexOf(MEMBER_SEPARATOR);
+        MapRecord<String, String, byte[]> record = StreamRecords.newRecord()
+                .in(separator < 0 ? listener.streamName() : recordId.substring(0, separator))
+                .withId(recordId.substring(separator + 1))
+                .ofMap(fields);
+        try {
+            handOver(record);
+        } catch (RuntimeException e) {
+            failed(recordId, fields, attempts + 1, e);
+            return false;
+        }
+
+        execute(COMPLETE_SCRIPT, serialize(recordId));
+        log.info("Record {} from '{}' stream was handled in '{}' group after {} retry(ies)", recordId, listener.streamName(), listener.group(), attempts);
+        return true;
+    }
+
+    /**
+     * Records of a partitioned listener are retried in their lanes, after records of the same order read before.
+     */
+    private void handOver(MapRecord<String, String, byte[]> record) {
+        if (listener instanceof PartitionedStreamListener partitionedListener) {
+            partitionedListener.handle(record);
+        } else {
+            listener.onMessage(record);
+        }
+    }
+
+    private void failed(String recordId, Map<String, byte[]> fields, int attempts, RuntimeException error) {
+        if (attempts >= maxAttempts) {
+            deadLetter(recordId, fields, attempts, error);
+            return;
+        }
+        schedule(recordId, fields, attempts);
+        log.warn("Record {} from '{}' stream failed {} time(s) in '{}' group and will be retried",
+                recordId, listener.streamName(), attempts, listener.group(), error);
+    }
+
+    private void schedule(String recordId, Map<String, byte[]> fields, int attempts) {
+        var dueAt = clock.millis() + backoff(attempts).toMillis();
+        execute(PARK_SCRIPT, args(fields, serialize(recordId), serialize(String.valueOf(attempts)), serialize(String.valueOf(dueAt))));
+    }
+
+    private void deadLetter(String recordId, Map<String, byte[]> fields, int attempts, RuntimeException error) {
+        execute(DEAD_LETTER_SCRIPT, args(fields, serialize(recordId), serialize(String.valueOf(attempts)), serialize(String.valueOf(error))));
+        log.error("Record {} from '{}' stream failed {} time(s) in '{}' group and was moved to '{}' stream",
+                recordId, listener.streamName(), attempts, listener.group(), deadLetterStream(), error);
+    }
+
+    /**
+     * Doubles with each attempt, starting from the initial backoff, but is never longer than the max backoff.
+     */
+    Duration backoff(int attempts) {
+        var backoff = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 30));
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+
+    /**
+     * Given arguments followed by names and values of all record fields.
+     */
+    private static byte[][] args(Map<String, byte[]> fields, byte[]... args) {
+        var result = new ArrayList<byte[]>(List.of(args));
+        fields.forEach((name, value) -> {
+            result.add(serialize(name));
+            result.add(value);
+        });
+        return result.toArray(byte[][]::new);
+    }
+
+    private static Map<String, byte[]> fields(List<?> values) {
+        Map<String, byte[]> fields = new LinkedHashMap<>();
+        for (int i = 0; i < values.size(); i += 2) {
+            fields.put(deserialize((byte[]) values.get(i)), (byte[]) values.get(i + 1));
+        }
+        return fields;
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private List<List<Object>> leaseDue() {
+        var now = clock.millis();
+        return redisTemplate.execute(LEASE_DUE_SCRIPT, RedisSerializer.byteArray(), (RedisSerializer) RedisSerializer.byteArray(),
+                keys(), serialize(String.valueOf(now)), serialize(String.valueOf(now + LEASE.toMillis())), serialize(String.valueOf(COUNT)));
+    }
+
+    private String execute(RedisScript<String> script, byte[]... args) {
+        return redisTemplate.execute(script, RedisSerializer.byteArray(), RedisSerializer.string(), keys(), (Object[]) args);
+    }
+
+    private List<String> keys() {
+        var name = listener.streamName() + ":" + listener.group();
+        return List.of("retries-schedule::" + name, "retries::" + name, deadLetterStream());
+    }
+
+    @Override
+    public boolean isActive() {
+        return active && thread.isAlive();
+    }
+
+    @Override
+    public boolean await(Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        while (!thread.isAlive() && active) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Stops retrying and waits for a retry in progress to finish. Lanes of a partitioned listener are drained after
+     * that, so records that are already queued are still handled and acknowledged.
+     */
+    @Override
+    public void cancel() {
+        active = false;
+        LockSupport.unpark(thread);
+        try {
+            if (thread.isAlive()) {
+                thread.join(PartitionedStreamListener.DEFAULT_DRAIN_TIMEOUT.toMillis());
+            }
+            if (listener instanceof PartitionedStreamListener partitionedListener) {
+                partitionedListener.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while stopping retries of '{}' stream", listener.streamName());
+        }
+    }
+
+    /**
+     * Sleeps until the duration passes or the queue is cancelled.
+     */
+    private void sleep(Duration duration) {
+        var deadline = System.nanoTime() + duration.toNanos();
+        while (active && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(deadline - System.nanoTime());
+        }
+    }
+
+    private static String deserialize(byte[] value) {
+        return RedisSerializer.string().deserialize(value);
+    }
+
+    private static byte[] serialize(String value) {
+        return RedisSerializer.string().serialize(value);
+    }
+}
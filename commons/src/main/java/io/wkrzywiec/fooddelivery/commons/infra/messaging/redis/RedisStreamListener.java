@@ -3,11 +3,37 @@ package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
 import org.springframework.data.redis.connection.stream.MapRecord;
 import org.springframework.data.redis.stream.StreamListener;
 
-public interface RedisStreamListener extends StreamListener<String, MapRecord<String, String, String>> {
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Payloads are handed over as raw bytes, so they can be decoded by a {@link io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec}.
+ */
+public interface RedisStreamListener extends StreamListener<String, MapRecord<String, String, byte[]>> {
 
 
     String streamName();
     String group();
     String consumer();
 
+    /**
+     * Names of message types handled by the listener, records of other types are acknowledged without being
+     * handed over. All records are handed over when it's empty.
+     */
+    default Set<String> messageTypes() {
+        return Set.of();
+    }
+
+    /**
+     * Records without a <code>type</code> field are handed over, so the listener decides what to do with them.
+     */
+    default boolean handles(MapRecord<String, String, byte[]> message) {
+        var types = messageTypes();
+        return types.isEmpty() || StreamRecordFields.typeOf(message).map(types::contains).orElse(true);
+    }
+
+    static Set<String> typeNames(Collection<? extends Class<?>> types) {
+        return types.stream().map(Class::getSimpleName).collect(Collectors.toUnmodifiableSet());
+    }
 }
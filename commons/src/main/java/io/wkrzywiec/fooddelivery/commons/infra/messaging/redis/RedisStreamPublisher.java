@@ -1,44 +1,75 @@
 package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
 
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessagePublisher;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.stream.RecordId;
-import org.springframework.data.redis.connection.stream.StreamRecords;
 import org.springframework.data.redis.core.RedisTemplate;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Synchronous publisher that waits for each message published by an {@link AsyncMessagePublisher}.
+ */
 @Slf4j
-@RequiredArgsConstructor
 public class RedisStreamPublisher implements MessagePublisher {
 
-    private final RedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper mapper;
+    private final AsyncMessagePublisher asyncPublisher;
+    private final StreamSharding sharding;
+
+    public RedisStreamPublisher(RedisTemplate<String, String> redisTemplate, MessageCodec codec) {
+        this(redisTemplate, codec, StreamSharding.NONE);
+    }
+
+    public RedisStreamPublisher(RedisTemplate<String, String> redisTemplate, MessageCodec codec, StreamSharding sharding) {
+        this(new RedisAsyncStreamPublisher((ReactiveRedisConnectionFactory) redisTemplate.getRequiredConnectionFactory(),
+                codec, RedisAsyncStreamPublisher.DEFAULT_MAX_IN_FLIGHT, RedisAsyncStreamPublisher.Backpressure.BLOCK, sharding), sharding);
+    }
+
+    public RedisStreamPublisher(AsyncMessagePublisher asyncPublisher, StreamSharding sharding) {
+        this.asyncPublisher = asyncPublisher;
+        this.sharding = sharding;
+    }
+
     @Override
     public void send(Message message) {
-        log.info("Publishing '{}' message on channel: '{}', body: '{}'", message.header().type(), message.header().channel(), message.body());
+        log.debug("Publishing '{}' message on channel: '{}', body: '{}'", message.header().type(), message.header().channel(), message.body());
 
-        String messageJson = null;
-        try {
-            messageJson = mapper.writeValueAsString(message);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        RecordId recordId = join(publish(message));
 
-        log.info(messageJson);
+        log.info("'{}' message was published on channel: '{}'. Record id: {}",
+                message.header().type(), message.header().channel(), recordId.getValue());
+    }
 
-        ObjectRecord<String, String> record = StreamRecords.newRecord()
-                .ofObject(messageJson)
-                .withStreamKey(message.header().channel());
+    /**
+     * All messages are handed over before waiting for any of them, so they are published together.
+     */
+    @Override
+    public void send(List<Message> messages) {
+        messages.stream().map(this::publish).toList().forEach(RedisStreamPublisher::join);
+    }
 
-        RecordId recordId = redisTemplate.opsForStream()
-                .add(record);
+    public CompletableFuture<RecordId> publish(Message message) {
+        return asyncPublisher.publish(message);
+    }
 
-        log.info("'{}' message was published on channel: '{}', full message: '{}'. Record id: {}",
-                message.header().type(), message.header().channel(), message, recordId.getValue());
+    /**
+     * A stream that a message is published on, the same as its channel, unless the channel is sharded.
+     */
+    public String streamOf(Message message) {
+        return sharding.streamOf(message.header());
+    }
+
+    private static RecordId join(CompletableFuture<RecordId> published) {
+        try {
+            return published.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
     }
 }
@@ -0,0 +1,70 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.stream.MapRecord;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parks records that a listener failed to handle in a {@link RedisRetryQueue} instead of throwing, so they can be
+ * acknowledged and reading the stream goes on. Batches of a listener with {@link RedisBatchStreamListener#atomicBatches()}
+ * are handled at once, and when a whole batch failed, its records are handled once again one by one and only the failed
+ * ones are parked. Records of other listeners are handled one by one, each failed one parked on its own, so none of them
+ * is handled twice.
+ */
+@Slf4j
+public class RetryingStreamListener implements RedisBatchStreamListener {
+
+    private final RedisStreamListener delegate;
+    private final RedisRetryQueue retryQueue;
+
+    public RetryingStreamListener(RedisStreamListener delegate, RedisRetryQueue retryQueue) {
+        this.delegate = delegate;
+        this.retryQueue = retryQueue;
+    }
+
+    @Override
+    public String streamName() {
+        return delegate.streamName();
+    }
+
+    @Override
+    public String group() {
+        return delegate.group();
+    }
+
+    @Override
+    public String consumer() {
+        return delegate.consumer();
+    }
+
+    @Override
+    public Set<String> messageTypes() {
+        return delegate.messageTypes();
+    }
+
+    @Override
+    public void onMessage(MapRecord<String, String, byte[]> message) {
+        try {
+            delegate.onMessage(message);
+        } catch (RuntimeException e) {
+            retryQueue.park(message, e);
+        }
+    }
+
+    @Override
+    public void onMessages(List<MapRecord<String, String, byte[]>> messages) {
+        if (!(delegate instanceof RedisBatchStreamListener batchStreamListener) || !batchStreamListener.atomicBatches()) {
+            messages.forEach(this::onMessage);
+            return;
+        }
+
+        try {
+            batchStreamListener.onMessages(messages);
+        } catch (RuntimeException e) {
+            log.warn("Failed to handle a batch of {} record(s) from '{}' stream, handling them one by one", messages.size(), streamName(), e);
+            messages.forEach(this::onMessage);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header;
+import org.springframework.data.redis.connection.stream.MapRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Besides an encoded message in a <code>payload</code> field, a stream record holds copies of the message header
+ * fields, so consumers can skip messages of types they don't handle without decoding them. Records published
+ * before the header fields were added hold only the payload.
+ */
+public final class StreamRecordFields {
+
+    public static final String PAYLOAD = "payload";
+    public static final String TYPE = "type";
+    public static final String ITEM_ID = "itemId";
+    public static final String MESSAGE_ID = "messageId";
+    public static final String CREATED_AT = "createdAt";
+
+    private StreamRecordFields() {
+    }
+
+    public static Map<byte[], byte[]> recordFields(byte[] payload, Header header) {
+        Map<byte[], byte[]> fields = new LinkedHashMap<>();
+        fields.put(bytes(PAYLOAD), payload);
+        headerFields(header).forEach((field, value) -> fields.put(bytes(field), bytes(value)));
+        return fields;
+    }
+
+    /**
+     * Header fields as a flat list of names and values, to be passed to a Lua script.
+     */
+    public static List<byte[]> headerArgs(Header header) {
+        List<byte[]> args = new ArrayList<>();
+        headerFields(header).forEach((field, value) -> {
+            args.add(bytes(field));
+            args.add(bytes(value));
+        });
+        return args;
+    }
+
+    public static Optional<String> typeOf(MapRecord<String, String, byte[]> record) {
+        return Optional.ofNullable(record.getValue().get(TYPE)).map(type -> new String(type, StandardCharsets.UTF_8));
+    }
+
+    public static Optional<String> itemIdOf(MapRecord<String, String, byte[]> record) {
+        return Optional.ofNullable(record.getValue().get(ITEM_ID)).map(itemId -> new String(itemId, StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> headerFields(Header header) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        putIfPresent(fields, TYPE, header.type());
+        putIfPresent(fields, ITEM_ID, header.itemId());
+        putIfPresent(fields, MESSAGE_ID, header.messageId());
+        putIfPresent(fields, CREATED_AT, header.createdAt() == null ? null : header.createdAt().toString());
+        return fields;
+    }
+
+    private static void putIfPresent(Map<String, String> fields, String field, String value) {
+        if (value != null) {
+            fields.put(field, value);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,36 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Every service trims streams, which is safe, because a trim never goes past records that any group still needs.
+ * A sharded channel is trimmed shard by shard.
+ */
+@Configuration
+@Profile("redis")
+@EnableScheduling
+@ConditionalOnProperty(name = "messaging.redis.retention.enabled", havingValue = "true", matchIfMissing = true)
+public class StreamRetentionConfig {
+
+    @Bean
+    public StreamRetentionManager streamRetentionManager(RedisTemplate<String, String> redisTemplate,
+                                                         MeterRegistry meterRegistry,
+                                                         StreamSharding streamSharding,
+                                                         @Value("${messaging.redis.retention.streams:orders,ordering.commands,delivery.commands}") List<String> streams,
+                                                         @Value("${messaging.redis.retention.safety-window:PT10M}") Duration safetyWindow) {
+        var shardStreams = streams.stream()
+                .flatMap(stream -> streamSharding.streamsOf(stream).stream())
+                .toList();
+        return new StreamRetentionManager(redisTemplate, shardStreams, safetyWindow, meterRegistry);
+    }
+}
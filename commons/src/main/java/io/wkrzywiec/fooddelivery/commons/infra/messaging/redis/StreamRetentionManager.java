@@ -0,0 +1,116 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Trims streams up to the oldest record that some consumer group may still need, so they don't grow forever.
+ * For each group it's the oldest of its pending records or, if there are none, its last delivered record.
+ * Records are removed with XTRIM MINID only below the oldest of them across all groups, moved back by a safety
+ * window, so no record that wasn't handled yet is ever dropped. Streams without any group are not trimmed.
+ */
+@Slf4j
+public class StreamRetentionManager {
+
+    /**
+     * Returns a number of trimmed records and a length of a stream after trimming.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TRIM_SCRIPT = RedisScript.of("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return { '0', '0' }
+            end
+            local minMs, minSeq
+            for _, group in ipairs(redis.call('XINFO', 'GROUPS', KEYS[1])) do
+                local name, lastDelivered
+                for i = 1, #group, 2 do
+                    if group[i] == 'name' then
+                        name = group[i + 1]
+                    elseif group[i] == 'last-delivered-id' then
+                        lastDelivered = group[i + 1]
+                    end
+                end
+                local pending = redis.call('XPENDING', KEYS[1], name)
+                local oldest = pending[1] > 0 and pending[2] or lastDelivered
+                local ms, seq = string.match(oldest, '(%d+)-(%d+)')
+                ms, seq = tonumber(ms), tonumber(seq)
+                if minMs == nil or ms < minMs or (ms == minMs and seq < minSeq) then
+                    minMs, minSeq = ms, seq
+                end
+            end
+            local length = redis.call('XLEN', KEYS[1])
+            local windowMs = tonumber(ARGV[1])
+            if minMs == nil or minMs - windowMs <= 0 then
+                return { '0', tostring(length) }
+            end
+            local minId = string.format('%.0f-%.0f', minMs, minSeq)
+            if windowMs > 0 then
+                minId = string.format('%.0f-0', minMs - windowMs)
+            end
+            local trimmed = redis.call('XTRIM', KEYS[1], 'MINID', minId)
+            return { tostring(trimmed), tostring(length - trimmed) }
+            """, List.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final List<String> streams;
+    private final Duration safetyWindow;
+    private final Map<String, Counter> trimmedCounters;
+    private final Map<String, AtomicLong> lengths;
+
+    public StreamRetentionManager(RedisTemplate<String, String> redisTemplate, List<String> streams, Duration safetyWindow,
+                                  MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.streams = streams;
+        this.safetyWindow = safetyWindow;
+        this.trimmedCounters = streams.stream().collect(Collectors.toMap(Function.identity(), stream ->
+                Counter.builder("messaging.stream.trimmed")
+                        .tag("stream", stream)
+                        .description("The number of records trimmed from a stream")
+                        .register(meterRegistry)));
+        this.lengths = streams.stream().collect(Collectors.toMap(Function.identity(), stream -> {
+            var length = new AtomicLong();
+            Gauge.builder("messaging.stream.length", length, AtomicLong::get)
+                    .tag("stream", stream)
+                    .description("The number of records in a stream after it was last trimmed")
+                    .register(meterRegistry);
+            return length;
+        }));
+    }
+
+    @Scheduled(fixedDelayString = "${messaging.redis.retention.interval:PT1M}", initialDelayString = "${messaging.redis.retention.interval:PT1M}")
+    public void run() {
+        streams.forEach(this::trim);
+    }
+
+    public long trim(String stream) {
+        List<String> result = execute(stream);
+        var trimmed = Long.parseLong(result.get(0));
+        var length = Long.parseLong(result.get(1));
+
+        trimmedCounters.get(stream).increment(trimmed);
+        lengths.get(stream).set(length);
+        if (trimmed > 0) {
+            log.info("{} record(s) were trimmed from '{}' stream, {} record(s) left", trimmed, stream, length);
+        }
+        return trimmed;
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private List<String> execute(String stream) {
+        return redisTemplate.execute(TRIM_SCRIPT, RedisSerializer.string(), (RedisSerializer) RedisSerializer.string(),
+                List.of(stream), String.valueOf(safetyWindow.toMillis()));
+    }
+}
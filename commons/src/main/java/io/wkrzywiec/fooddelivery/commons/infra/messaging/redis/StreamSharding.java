@@ -0,0 +1,50 @@
+package io.wkrzywiec.fooddelivery.commons.infra.messaging.redis;
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Spreads messages of sharded channels over <code>[channel]:[n]</code> streams, so they can live on different
+ * Redis shards. A shard is picked by a hash of an <code>itemId</code> from a message header, so all messages
+ * of an order go to the same stream and keep their order. Other channels are published on a single stream.
+ */
+public class StreamSharding {
+
+    public static final StreamSharding NONE = new StreamSharding(Set.of(), 1);
+
+    private final Set<String> shardedChannels;
+    private final int shards;
+
+    public StreamSharding(Set<String> shardedChannels, int shards) {
+        this.shardedChannels = shardedChannels;
+        this.shards = shards;
+    }
+
+    public String streamOf(Header header) {
+        if (!isSharded(header.channel()) || header.itemId() == null) {
+            return header.channel();
+        }
+        return shardKey(header.channel(), Math.floorMod(header.itemId().hashCode(), shards));
+    }
+
+    /**
+     * All streams that messages of a channel can be published on.
+     */
+    public List<String> streamsOf(String channel) {
+        if (!isSharded(channel)) {
+            return List.of(channel);
+        }
+        return IntStream.range(0, shards).mapToObj(shard -> shardKey(channel, shard)).toList();
+    }
+
+    private boolean isSharded(String channel) {
+        return shards > 1 && shardedChannels.contains(channel);
+    }
+
+    private static String shardKey(String channel, int shard) {
+        return channel + ":" + shard;
+    }
+}
@@ -0,0 +1,233 @@
+package io.wkrzywiec.fooddelivery.commons.infra.repository;
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessagePublisher;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisStreamPublisher;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.StreamRecordFields;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Packs events of many aggregates into a fixed number of Redis Hashes (<code>buckets::[prefix][n]</code>) instead of
+ * keeping a separate stream for each of them. A bucket is picked by a hash of an orderId, a field named after the orderId
+ * holds all its events, each prefixed with its length, and a <code>[orderId]#version</code> field holds their number.
+ * Reading an aggregate is a single HMGET, so it doesn't depend on how many other aggregates share its bucket.
+ * <p>
+ * If a store of the per-order stream layout is given, an aggregate that is not found in a bucket is moved
+ * from its stream on first read, and {@link #migrateAll()} moves all of them at once.
+ */
+@Slf4j
+public class BucketedRedisEventStore implements EventStore {
+
+    private static final String BUCKET_PREFIX = "buckets::";
+    private static final String VERSION_SUFFIX = "#version";
+    private static final int MAX_MIGRATION_ATTEMPTS = 5;
+
+    private static final RedisScript<String> APPEND_SCRIPT = RedisScript.of("""
+            local versionField = ARGV[1] .. '#version'
+            local version = tonumber(redis.call('HGET', KEYS[1], versionField) or '0')
+            local expectedVersion = tonumber(ARGV[3])
+            if expectedVersion >= 0 and version ~= expectedVersion then
+                return false
+            end
+            local events = redis.call('HGET', KEYS[1], ARGV[1]) or ''
+            redis.call('HSET', KEYS[1], ARGV[1], events .. ARGV[2], versionField, version + 1)
+            if KEYS[2] then
+                local channelFields = { 'payload', string.sub(ARGV[2], 5) }
+                for i = 4, #ARGV do
+                    table.insert(channelFields, ARGV[i])
+                end
+                redis.call('XADD', KEYS[2], '*', unpack(channelFields))
+            end
+            return tostring(version + 1)
+            """, String.class);
+
+    private static final RedisScript<String> MIGRATE_SCRIPT = RedisScript.of("""
+            local last = redis.call('XREVRANGE', KEYS[2], '+', '-', 'COUNT', 1)
+            if #last == 0 or last[1][1] ~= ARGV[3] then
+                return false
+            end
+            local versionField = ARGV[1] .. '#version'
+            local version = tonumber(redis.call('HGET', KEYS[1], versionField) or '0')
+            local events = redis.call('HGET', KEYS[1], ARGV[1]) or ''
+            redis.call('HSET', KEYS[1], ARGV[1], ARGV[2] .. events, versionField, version + tonumber(ARGV[4]))
+            redis.call('DEL', KEYS[2], KEYS[3], KEYS[4])
+            return tostring(version + tonumber(ARGV[4]))
+            """, String.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MessageCodec codec;
+    private final String keyPrefix;
+    private final int buckets;
+    private final RedisEventStore streamEventStore;
+
+    public BucketedRedisEventStore(RedisTemplate<String, String> redisTemplate, MessageCodec codec, String keyPrefix, int buckets) {
+        this(redisTemplate, codec, keyPrefix, buckets, null);
+    }
+
+    public BucketedRedisEventStore(RedisTemplate<String, String> redisTemplate, MessageCodec codec, String keyPrefix, int buckets,
+                                   RedisEventStore streamEventStore) {
+        this.redisTemplate = redisTemplate;
+        this.codec = codec;
+        this.keyPrefix = keyPrefix;
+        this.buckets = buckets;
+        this.streamEventStore = streamEventStore;
+    }
+
+    @Override
+    public void store(Message event) {
+        store(event, ANY_VERSION);
+    }
+
+    @Override
+    public void store(Message event, long expectedVersion) {
+        var orderId = event.body().orderId();
+        var version = append(List.of(bucketKey(orderId)), event, expectedVersion);
+
+        log.info("Event was stored in bucket: '{}' in version {}, full message: '{}'", bucketKey(orderId), version, event);
+    }
+
+    /**
+     * When events are published on Redis streams, the event is appended to a bucket and to the channel stream
+     * by a single Lua script, the same as it's done by {@link RedisEventStore}, so it doesn't work on Redis Cluster either.
+     */
+    @Override
+    public void storeAndPublish(Message event, long expectedVersion, MessagePublisher publisher) {
+        if (!(publisher instanceof RedisStreamPublisher streamPublisher)) {
+            EventStore.super.storeAndPublish(event, expectedVersion, publisher);
+            return;
+        }
+
+        var orderId = event.body().orderId();
+        var channel = streamPublisher.streamOf(event);
+        var version = append(List.of(bucketKey(orderId), channel), event, expectedVersion);
+
+        log.info("Event was stored in bucket: '{}' in version {} and published on channel: '{}', full message: '{}'",
+                bucketKey(orderId), version, channel, event);
+    }
+
+    @Override
+    public List<Message> getEventsForOrder(String orderId) {
+        return getEventStream(orderId).events();
+    }
+
+    @Override
+    public EventStream getEventStream(String orderId) {
+        log.info("Fetching events of '{}' aggregate from '{}' bucket", orderId, bucketKey(orderId));
+        var eventStream = readBucket(orderId);
+
+        if (eventStream.version() == 0 && streamEventStore != null) {
+            return migrate(orderId) ? readBucket(orderId) : streamEventStore.getEventStream(orderId);
+        }
+        return eventStream;
+    }
+
+    /**
+     * Moves an aggregate from its stream of the per-order layout to a bucket, events already stored in
+     * the bucket are kept after the moved ones. All its events are moved, not a snapshot, together with the archived
+     * ones of an aggregate that got new events after it was archived. The stream, its snapshot and archived version
+     * are deleted in the same script, if the stream still ends with the last moved record, so an aggregate can't be
+     * moved twice. Returns false if there was nothing to move, aggregates found only in an archive stay there.
+     */
+    public boolean migrate(String orderId) {
+        var streamKey = streamEventStore.streamKey(orderId);
+        for (int attempt = 1; attempt <= MAX_MIGRATION_ATTEMPTS; attempt++) {
+            var eventStream = streamEventStore.getFullEventStream(orderId);
+            if (eventStream.lastRecordId() == null) {
+                return false;
+            }
+            if (moveToBucket(orderId, eventStream)) {
+                log.info("'{}' stream with {} event(s) was moved to '{}' bucket", streamKey, eventStream.version(), bucketKey(orderId));
+                return true;
+            }
+            log.info("'{}' stream has changed while it was migrated, trying again", streamKey);
+        }
+        throw new RuntimeException("Failed to move '" + streamKey + "' stream to a bucket, it has changed during "
+                + MAX_MIGRATION_ATTEMPTS + " attempts");
+    }
+
+    private boolean moveToBucket(String orderId, EventStream eventStream) {
+        var frames = new ByteArrayOutputStream();
+        eventStream.events().forEach(event -> frames.writeBytes(frame(codec.encode(event))));
+
+        String version = redisTemplate.execute(MIGRATE_SCRIPT, RedisSerializer.byteArray(), RedisSerializer.string(),
+                List.of(bucketKey(orderId), streamEventStore.streamKey(orderId), streamEventStore.snapshotKey(orderId),
+                        streamEventStore.archivedKey(orderId)),
+                serialize(orderId), frames.toByteArray(), serialize(eventStream.lastRecordId()),
+                serialize(String.valueOf(eventStream.events().size())));
+        return version != null;
+    }
+
+    /**
+     * Moves all aggregates that are still kept in the per-order stream layout to buckets.
+     */
+    public long migrateAll() {
+        var migrated = new AtomicLong();
+        streamEventStore.forEachAggregate(orderId -> {
+            if (migrate(orderId)) {
+                migrated.incrementAndGet();
+            }
+        });
+
+        log.info("{} aggregate(s) were moved from '{}' streams to buckets", migrated.get(), streamEventStore.streamPrefix());
+        return migrated.get();
+    }
+
+    private long append(List<String> keys, Message event, long expectedVersion) {
+        List<byte[]> args = new ArrayList<>(List.of(serialize(event.body().orderId()), frame(codec.encode(event)), serialize(String.valueOf(expectedVersion))));
+        if (keys.size() > 1) {
+            args.addAll(StreamRecordFields.headerArgs(event.header()));
+        }
+        String version = redisTemplate.execute(APPEND_SCRIPT, RedisSerializer.byteArray(), RedisSerializer.string(),
+                keys, args.toArray());
+        if (version == null) {
+            throw new EventVersionConflictException(event.body().orderId(), expectedVersion);
+        }
+        return Long.parseLong(version);
+    }
+
+    private EventStream readBucket(String orderId) {
+        List<byte[]> fields = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.hashCommands().hMGet(serialize(bucketKey(orderId)), serialize(orderId), serialize(orderId + VERSION_SUFFIX)));
+
+        if (fields == null || fields.get(0) == null) {
+            return new EventStream(orderId, List.of(), null, 0);
+        }
+
+        List<Message> events = new ArrayList<>();
+        var frames = ByteBuffer.wrap(fields.get(0));
+        while (frames.hasRemaining()) {
+            var payload = new byte[frames.getInt()];
+            frames.get(payload);
+            events.add(codec.decodeMessage(payload));
+        }
+
+        var version = Long.parseLong(RedisSerializer.string().deserialize(fields.get(1)));
+        return new EventStream(orderId, events, null, version);
+    }
+
+    private String bucketKey(String orderId) {
+        return BUCKET_PREFIX + keyPrefix + Math.floorMod(orderId.hashCode(), buckets);
+    }
+
+    private static byte[] frame(byte[] payload) {
+        return ByteBuffer.allocate(Integer.BYTES + payload.length)
+                .putInt(payload.length)
+                .put(payload)
+                .array();
+    }
+
+    private static byte[] serialize(String value) {
+        return RedisSerializer.string().serialize(value);
+    }
+}
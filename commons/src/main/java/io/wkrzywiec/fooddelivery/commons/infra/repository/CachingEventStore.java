@@ -0,0 +1,114 @@
+package io.wkrzywiec.fooddelivery.commons.infra.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessagePublisher;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps recently used aggregates in memory, folded into a snapshot, together with the id of the last
+ * record applied to them. On a cache hit only events appended after that record are read from Redis.
+ * Eviction is driven by Caffeine's W-TinyLFU policy, so frequently touched orders stay in the cache.
+ */
+@Slf4j
+public class CachingEventStore implements EventStore {
+
+    private final RedisEventStore eventStore;
+    private final SnapshotSerializer snapshotSerializer;
+    private final Cache<String, CachedAggregate> cache;
+
+    public CachingEventStore(RedisEventStore eventStore, SnapshotSerializer snapshotSerializer, long maximumSize,
+                             String cacheName, MeterRegistry meterRegistry) {
+        this.eventStore = eventStore;
+        this.snapshotSerializer = snapshotSerializer;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, cacheName);
+        Gauge.builder("cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .tags(Tags.of("cache", cacheName))
+                .description("The ratio of cache lookups that found a rehydrated aggregate")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void store(Message event) {
+        eventStore.store(event);
+    }
+
+    @Override
+    public void store(Message event, long expectedVersion) {
+        eventStore.store(event, expectedVersion);
+    }
+
+    @Override
+    public void storeAndPublish(Message event, long expectedVersion, MessagePublisher publisher) {
+        eventStore.storeAndPublish(event, expectedVersion, publisher);
+    }
+
+    @Override
+    public List<Message> getEventsForOrder(String orderId) {
+        return getEventStream(orderId).events();
+    }
+
+    /**
+     * The cache holds only the latest state of an aggregate, so past states are read from Redis.
+     */
+    @Override
+    public List<Message> getEventsForOrder(String orderId, Instant asOf) {
+        return eventStore.getEventsForOrder(orderId, asOf);
+    }
+
+    /**
+     * Bulk loads are meant for rebuilding many aggregates, so they go straight to Redis and don't fill the cache.
+     */
+    @Override
+    public Map<String, List<Message>> getEventsForOrders(Collection<String> orderIds) {
+        return eventStore.getEventsForOrders(orderIds);
+    }
+
+    @Override
+    public EventStream getEventStream(String orderId) {
+        var cached = cache.getIfPresent(orderId);
+
+        if (cached == null) {
+            var eventStream = eventStore.getEventStream(orderId);
+            if (eventStream.events().isEmpty()) {
+                return eventStream;
+            }
+            return rehydrate(orderId, eventStream.events(), eventStream.lastRecordId(), eventStream.version());
+        }
+
+        var tail = eventStore.getEventStreamAfter(orderId, cached.lastRecordId(), cached.version());
+        if (tail.events().isEmpty()) {
+            return new EventStream(orderId, List.of(cached.snapshot()), cached.lastRecordId(), cached.version());
+        }
+
+        log.info("Applying {} new event(s) to cached '{}' aggregate", tail.events().size(), orderId);
+        List<Message> events = new ArrayList<>(tail.events().size() + 1);
+        events.add(cached.snapshot());
+        events.addAll(tail.events());
+        return rehydrate(orderId, events, tail.lastRecordId(), tail.version());
+    }
+
+    private EventStream rehydrate(String orderId, List<Message> events, String lastRecordId, long version) {
+        var snapshot = snapshotSerializer.snapshot(orderId, events);
+        cache.put(orderId, new CachedAggregate(snapshot, lastRecordId, version));
+        return new EventStream(orderId, List.of(snapshot), lastRecordId, version);
+    }
+
+    private record CachedAggregate(Message snapshot, String lastRecordId, long version) {}
+}
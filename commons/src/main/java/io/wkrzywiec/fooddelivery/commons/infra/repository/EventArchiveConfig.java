@@ -0,0 +1,16 @@
+package io.wkrzywiec.fooddelivery.commons.infra.repository;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Runs {@link EventArchiver} jobs of services, they are enabled by setting a directory of the archive.
+ */
+@Configuration
+@Profile("redis")
+@EnableScheduling
+@ConditionalOnProperty(name = "event-store.archive.directory")
+public class EventArchiveConfig {
+}
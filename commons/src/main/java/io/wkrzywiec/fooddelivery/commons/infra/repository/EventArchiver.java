@@ -0,0 +1,70 @@
+package io.wkrzywiec.fooddelivery.commons.infra.repository;
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves aggregates that reached their terminal state from Redis streams to a {@link SegmentArchive}, a batch
+ * of them per segment. Streams are deleted only after a segment was written, so Redis keeps only in-flight aggregates.
+ * Only the last record of each stream is read to find them, whole histories are read only for archived aggregates.
+ */
+@Slf4j
+public class EventArchiver {
+
+    private final RedisEventStore eventStore;
+    private final SnapshotSerializer snapshotSerializer;
+    private final SegmentArchive archive;
+    private final int batchSize;
+
+    public EventArchiver(RedisEventStore eventStore, SnapshotSerializer snapshotSerializer, SegmentArchive archive, int batchSize) {
+        this.eventStore = eventStore;
+        this.snapshotSerializer = snapshotSerializer;
+        this.archive = archive;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${event-store.archive.interval:PT1H}", initialDelayString = "${event-store.archive.interval:PT1H}")
+    public void run() {
+        archiveTerminalAggregates();
+    }
+
+    public long archiveTerminalAggregates() {
+        log.info("Archiving aggregates that reached their terminal state from '{}' streams", eventStore.streamPrefix());
+        Map<String, EventStream> batch = new HashMap<>();
+        var archived = new AtomicLong();
+
+        eventStore.forEachAggregate(orderId -> {
+            var lastEvent = eventStore.getLastEvent(orderId);
+            if (lastEvent.isEmpty() || !snapshotSerializer.isTerminal(lastEvent.get())) {
+                return;
+            }
+
+            batch.put(orderId, eventStore.getFullEventStream(orderId));
+            if (batch.size() >= batchSize) {
+                archived.addAndGet(flush(batch));
+            }
+        });
+        archived.addAndGet(flush(batch));
+
+        log.info("{} aggregate(s) were archived from '{}' streams", archived.get(), eventStore.streamPrefix());
+        return archived.get();
+    }
+
+    private long flush(Map<String, EventStream> batch) {
+        Map<String, List<Message>> aggregates = new HashMap<>();
+        batch.forEach((orderId, eventStream) -> aggregates.put(orderId, eventStream.events()));
+        archive.append(aggregates);
+
+        var deleted = batch.values().stream()
+                .filter(eventStream -> eventStore.delete(eventStream.orderId(), eventStream.version()))
+                .count();
+        batch.clear();
+        return deleted;
+    }
+}
@@ -1,11 +1,69 @@
 package io.wkrzywiec.fooddelivery.commons.infra.repository;
 
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessagePublisher;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public interface EventStore {
 
+    /**
+     * Expected version that skips the concurrency check.
+     */
+    long ANY_VERSION = -1;
+
     void store(Message event);
+
+    /**
+     * Stores an event only if the aggregate still has the expected number of events,
+     * otherwise {@link EventVersionConflictException} is thrown.
+     */
+    void store(Message event, long expectedVersion);
+
     List<Message> getEventsForOrder(String orderId);
+
+    /**
+     * Same as {@link #getEventsForOrder(String)}, but also tells which version of the aggregate was read.
+     */
+    EventStream getEventStream(String orderId);
+
+    /**
+     * Returns events of an aggregate that were created up to a given time, so it can be rebuilt as it was back then.
+     */
+    default List<Message> getEventsForOrder(String orderId, Instant asOf) {
+        return getEventsForOrder(orderId).stream()
+                .filter(event -> !event.header().createdAt().isAfter(asOf))
+                .toList();
+    }
+
+    /**
+     * Loads many aggregates at once, events are grouped by orderId in order of given ids. Stores that can
+     * load them in fewer round trips than one per aggregate override it.
+     */
+    default Map<String, List<Message>> getEventsForOrders(Collection<String> orderIds) {
+        Map<String, List<Message>> events = new LinkedHashMap<>();
+        orderIds.forEach(orderId -> events.put(orderId, getEventsForOrder(orderId)));
+        return events;
+    }
+
+    /**
+     * Stores an event and publishes it on its channel. Implementations may do both in a single atomic call.
+     */
+    default void storeAndPublish(Message event, MessagePublisher publisher) {
+        storeAndPublish(event, ANY_VERSION, publisher);
+    }
+
+    default void storeAndPublish(Message event, long expectedVersion, MessagePublisher publisher) {
+        store(event, expectedVersion);
+        publisher.send(event);
+    }
+
+    default Stream<Message> streamEventsForOrder(String orderId) {
+        return getEventsForOrder(orderId).stream();
+    }
 }
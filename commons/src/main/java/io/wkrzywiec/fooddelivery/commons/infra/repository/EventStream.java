@@ -0,0 +1,11 @@
+package io.wkrzywiec.fooddelivery.commons.infra.repository;
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+
+import java.util.List;
+
+/**
+ * Events of an aggregate read from a store. The version is the number of events stored for
+ * the aggregate, including those already folded into a snapshot.
+ */
+public record EventStream(String orderId, List<Message> events, String lastRecordId, long version) {}
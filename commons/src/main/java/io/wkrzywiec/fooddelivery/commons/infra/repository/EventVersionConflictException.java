@@ -0,0 +1,32 @@
+package io.wkrzywiec.fooddelivery.commons.infra.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import static java.lang.String.format;
+
+@Slf4j
+public class EventVersionConflictException extends RuntimeException {
+
+    public static final int MAX_ATTEMPTS = 3;
+
+    public EventVersionConflictException(String orderId, long expectedVersion) {
+        super(format("Failed to store an event for '%s' aggregate. It is no longer in expected version %d.", orderId, expectedVersion));
+    }
+
+    /**
+     * Runs a handler once again, with freshly loaded events, when it stored an event concurrently with another one.
+     */
+    public static void retryOnConflict(Runnable handler) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                handler.run();
+                return;
+            } catch (EventVersionConflictException ex) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw ex;
+                }
+                log.warn("{} Retrying, attempt {} of {}", ex.getMessage(), attempt + 1, MAX_ATTEMPTS);
+            }
+        }
+    }
+}
@@ -14,13 +14,29 @@ public class InMemoryEventStore implements EventStore {
 
     @Override
     public void store(Message event) {
-        var stream = store.getOrDefault(event.body().orderId(), new ArrayList<>());
-        stream.add(event);
-        store.put(event.body().orderId(), stream);
+        store(event, ANY_VERSION);
+    }
+
+    @Override
+    public void store(Message event, long expectedVersion) {
+        store.compute(event.body().orderId(), (orderId, stream) -> {
+            var events = stream == null ? new ArrayList<Message>() : stream;
+            if (expectedVersion != ANY_VERSION && events.size() != expectedVersion) {
+                throw new EventVersionConflictException(orderId, expectedVersion);
+            }
+            events.add(event);
+            return events;
+        });
     }
 
     @Override
     public List<Message> getEventsForOrder(String orderId) {
         return store.getOrDefault(orderId, List.of());
     }
+
+    @Override
+    public EventStream getEventStream(String orderId) {
+        var events = List.copyOf(getEventsForOrder(orderId));
+        return new EventStream(orderId, events, null, events.size());
+    }
 }
@@ -0,0 +1,223 @@
+package io.wkrzywiec.fooddelivery.commons.infra.repository;
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Durable event store for a single node, events of all aggregates are appended to a log made of memory-mapped
+ * segment files. Each record holds its length, a CRC32 checksum, an orderId and an encoded message. The length is
+ * written last, so a record interrupted by a crash is not visible and is dropped when the store is opened again.
+ * <p>
+ * Appends are serialized by a lock, reads are lock-free and go through an in-memory index of record positions
+ * of each aggregate. The index is rebuilt at startup from record headers only, messages are not decoded.
+ * <p>
+ * Events are not kept in Redis, so {@link #storeAndPublish} can't append and publish them atomically. It stores
+ * an event and then publishes it, and an event stored right before a crash may never be published.
+ */
+@Slf4j
+public class MappedFileEventStore implements EventStore, Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_EXTENSION = ".log";
+    private static final int RECORD_HEADER_LENGTH = Integer.BYTES + Integer.BYTES + Short.BYTES;
+    private static final int CHECKSUM_OFFSET = Integer.BYTES;
+    private static final int ORDER_ID_OFFSET = Integer.BYTES + Integer.BYTES;
+    private static final long[] NO_RECORDS = new long[0];
+
+    private final Path directory;
+    private final MessageCodec codec;
+    private final int segmentSize;
+    private final boolean syncOnAppend;
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private final Map<String, long[]> index = new ConcurrentHashMap<>();
+    private int position;
+
+    public MappedFileEventStore(Path directory, MessageCodec codec) {
+        this(directory, codec, DEFAULT_SEGMENT_SIZE, false);
+    }
+
+    public MappedFileEventStore(Path directory, MessageCodec codec, int segmentSize, boolean syncOnAppend) {
+        this.directory = directory;
+        this.codec = codec;
+        this.segmentSize = segmentSize;
+        this.syncOnAppend = syncOnAppend;
+        open();
+    }
+
+    @Override
+    public void store(Message event) {
+        store(event, ANY_VERSION);
+    }
+
+    @Override
+    public void store(Message event, long expectedVersion) {
+        var orderId = event.body().orderId();
+        var id = orderId.getBytes(StandardCharsets.UTF_8);
+        var payload = codec.encode(event);
+        var recordLength = RECORD_HEADER_LENGTH + id.length + payload.length;
+        if (recordLength > segmentSize) {
+            throw new RuntimeException("Event of '" + orderId + "' aggregate is larger than a segment: " + recordLength + " bytes");
+        }
+
+        var checksum = new CRC32();
+        checksum.update(id);
+        checksum.update(payload);
+
+        synchronized (this) {
+            var records = index.getOrDefault(orderId, NO_RECORDS);
+            if (expectedVersion != ANY_VERSION && records.length != expectedVersion) {
+                throw new EventVersionConflictException(orderId, expectedVersion);
+            }
+
+            if (position + recordLength > segmentSize) {
+                addSegment();
+            }
+            var segmentNumber = segments.size() - 1;
+            var segment = segments.get(segmentNumber);
+
+            segment.putInt(position + CHECKSUM_OFFSET, (int) checksum.getValue());
+            segment.putShort(position + ORDER_ID_OFFSET, (short) id.length);
+            segment.put(position + RECORD_HEADER_LENGTH, id);
+            segment.put(position + RECORD_HEADER_LENGTH + id.length, payload);
+            segment.putInt(position, recordLength);
+            if (syncOnAppend) {
+                segment.force();
+            }
+
+            index.put(orderId, append(records, address(segmentNumber, position)));
+            position += recordLength;
+        }
+    }
+
+    @Override
+    public List<Message> getEventsForOrder(String orderId) {
+        return getEventStream(orderId).events();
+    }
+
+    @Override
+    public EventStream getEventStream(String orderId) {
+        var records = index.getOrDefault(orderId, NO_RECORDS);
+        List<Message> events = new ArrayList<>(records.length);
+        for (var address : records) {
+            events.add(codec.decodeMessage(payloadAt(address)));
+        }
+        return new EventStream(orderId, events, null, records.length);
+    }
+
+    @Override
+    public synchronized void close() {
+        segments.forEach(MappedByteBuffer::force);
+    }
+
+    private byte[] payloadAt(long address) {
+        var segment = segments.get((int) (address >>> 32));
+        var offset = (int) address;
+        var idLength = segment.getShort(offset + ORDER_ID_OFFSET);
+        var payload = new byte[segment.getInt(offset) - RECORD_HEADER_LENGTH - idLength];
+        segment.get(offset + RECORD_HEADER_LENGTH + idLength, payload);
+        return payload;
+    }
+
+    private void open() {
+        try {
+            Files.createDirectories(directory);
+            try (var files = Files.list(directory)) {
+                var segmentFiles = files.filter(file -> file.toString().endsWith(SEGMENT_EXTENSION)).sorted().toList();
+                for (var segmentFile : segmentFiles) {
+                    segments.add(map(segmentFile));
+                    position = recover(segments.size() - 1);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to open event store log in '{}'", directory);
+            throw new RuntimeException("Event store error", e);
+        }
+
+        if (segments.isEmpty()) {
+            addSegment();
+        }
+        log.info("Event store log with {} segment(s) and {} aggregate(s) was opened in '{}'", segments.size(), index.size(), directory);
+    }
+
+    /**
+     * Reads all valid records of a segment into the index and returns a position right after the last of them.
+     */
+    private int recover(int segmentNumber) {
+        var segment = segments.get(segmentNumber);
+        var offset = 0;
+
+        while (offset + RECORD_HEADER_LENGTH <= segmentSize) {
+            var recordLength = segment.getInt(offset);
+            if (recordLength == 0) {
+                break;
+            }
+
+            var idLength = recordLength > RECORD_HEADER_LENGTH ? segment.getShort(offset + ORDER_ID_OFFSET) : -1;
+            if (idLength < 0 || recordLength > segmentSize - offset || !hasValidChecksum(segment, offset, recordLength)) {
+                log.warn("Dropping an incomplete record at {} of segment {} in '{}'", offset, segmentNumber, directory);
+                segment.put(offset, new byte[segmentSize - offset]);
+                break;
+            }
+
+            var id = new byte[idLength];
+            segment.get(offset + RECORD_HEADER_LENGTH, id);
+            var address = address(segmentNumber, offset);
+            index.compute(new String(id, StandardCharsets.UTF_8), (orderId, records) -> append(records == null ? NO_RECORDS : records, address));
+            offset += recordLength;
+        }
+        return offset;
+    }
+
+    private static boolean hasValidChecksum(MappedByteBuffer segment, int offset, int recordLength) {
+        var record = new byte[recordLength - RECORD_HEADER_LENGTH];
+        segment.get(offset + RECORD_HEADER_LENGTH, record);
+        var checksum = new CRC32();
+        checksum.update(record);
+        return (int) checksum.getValue() == segment.getInt(offset + CHECKSUM_OFFSET);
+    }
+
+    private void addSegment() {
+        var segmentFile = directory.resolve(String.format("%010d", segments.size() + 1) + SEGMENT_EXTENSION);
+        try {
+            segments.add(map(segmentFile));
+            position = 0;
+        } catch (IOException e) {
+            log.error("Failed to create '{}' event store segment", segmentFile);
+            throw new RuntimeException("Event store error", e);
+        }
+    }
+
+    private MappedByteBuffer map(Path segmentFile) throws IOException {
+        try (var channel = FileChannel.open(segmentFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private static long address(int segmentNumber, int offset) {
+        return ((long) segmentNumber << 32) | offset;
+    }
+
+    private static long[] append(long[] records, long address) {
+        var updated = Arrays.copyOf(records, records.length + 1);
+        updated[records.length] = address;
+        return updated;
+    }
+}
@@ -1,109 +1,582 @@
 package io.wkrzywiec.fooddelivery.commons.infra.repository;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
-import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
-import lombok.RequiredArgsConstructor;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessagePublisher;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisStreamPublisher;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.StreamRecordFields;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.connection.stream.Record;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
 import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
-import java.time.Duration;
-import java.util.List;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Slf4j
-@RequiredArgsConstructor
 public abstract class RedisEventStore implements EventStore {
 
+    private static final int DEFAULT_SNAPSHOT_FREQUENCY = 10;
+    private static final int DEFAULT_READ_PAGE_SIZE = 100;
+    private static final String PAYLOAD = "payload";
+    private static final String SNAPSHOT_PREFIX = "snapshot::";
+    private static final String ARCHIVED_PREFIX = "archived::";
+    private static final String SNAPSHOT_RECORD_ID = "recordId";
+    private static final String SNAPSHOT_PAYLOAD = "payload";
+    private static final String SNAPSHOT_VERSION = "version";
+
+    private static final RedisScript<String> STORE_SCRIPT = RedisScript.of("""
+            local version = redis.call('XLEN', KEYS[1]) + tonumber(redis.call('GET', KEYS[2]) or '0')
+            if version ~= tonumber(ARGV[2]) then
+                return false
+            end
+            return redis.call('XADD', KEYS[1], '*', 'payload', ARGV[1])
+            """, String.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> STORE_AND_PUBLISH_SCRIPT = RedisScript.of("""
+            local expectedVersion = tonumber(ARGV[2])
+            local version = redis.call('XLEN', KEYS[1]) + tonumber(redis.call('GET', KEYS[3]) or '0')
+            if expectedVersion >= 0 and version ~= expectedVersion then
+                return false
+            end
+            local storeRecordId = redis.call('XADD', KEYS[1], '*', 'payload', ARGV[1])
+            local channelFields = { 'payload', ARGV[1] }
+            for i = 3, #ARGV do
+                table.insert(channelFields, ARGV[i])
+            end
+            local channelRecordId = redis.call('XADD', KEYS[2], '*', unpack(channelFields))
+            return { storeRecordId, channelRecordId }
+            """, List.class);
+
+    private static final RedisScript<Long> DELETE_SCRIPT = RedisScript.of("""
+            local version = redis.call('XLEN', KEYS[1]) + tonumber(redis.call('GET', KEYS[3]) or '0')
+            if version ~= tonumber(ARGV[1]) then
+                return 0
+            end
+            redis.call('DEL', KEYS[1], KEYS[2])
+            redis.call('SET', KEYS[3], ARGV[1])
+            return 1
+            """, Long.class);
+
     private final RedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper objectMapper;
+    private final MessageCodec codec;
+    private final SnapshotSerializer snapshotSerializer;
+    private final int snapshotFrequency;
+    private final SegmentArchive archive;
 
-    protected abstract String streamPrefix();
+    protected RedisEventStore(RedisTemplate<String, String> redisTemplate, MessageCodec codec) {
+        this(redisTemplate, codec, null, DEFAULT_SNAPSHOT_FREQUENCY);
+    }
+
+    protected RedisEventStore(RedisTemplate<String, String> redisTemplate, MessageCodec codec, SnapshotSerializer snapshotSerializer) {
+        this(redisTemplate, codec, snapshotSerializer, DEFAULT_SNAPSHOT_FREQUENCY);
+    }
+
+    protected RedisEventStore(RedisTemplate<String, String> redisTemplate, MessageCodec codec, SnapshotSerializer snapshotSerializer, SegmentArchive archive) {
+        this(redisTemplate, codec, snapshotSerializer, DEFAULT_SNAPSHOT_FREQUENCY, archive);
+    }
 
-    protected  abstract Class<? extends DomainMessageBody> getClassType(String type);
+    protected RedisEventStore(RedisTemplate<String, String> redisTemplate, MessageCodec codec, SnapshotSerializer snapshotSerializer, int snapshotFrequency) {
+        this(redisTemplate, codec, snapshotSerializer, snapshotFrequency, null);
+    }
+
+    protected RedisEventStore(RedisTemplate<String, String> redisTemplate, MessageCodec codec, SnapshotSerializer snapshotSerializer, int snapshotFrequency,
+                              SegmentArchive archive) {
+        this.redisTemplate = redisTemplate;
+        this.codec = codec;
+        this.snapshotSerializer = snapshotSerializer;
+        this.snapshotFrequency = snapshotFrequency;
+        this.archive = archive;
+    }
+
+    protected abstract String streamPrefix();
 
     @Override
     public void store(Message event) {
         log.info("Storing event in a stream '{}', body: '{}'", streamPrefix() + event.body().orderId(), event);
 
-        String messageJsonAsString;
-        try {
-            messageJsonAsString = objectMapper.writeValueAsString(event);
-        } catch (JsonProcessingException e) {
-            log.error("Failed to parse event to json: {}", event);
-            throw new RuntimeException("Parsing error", e);
+        byte[] payload = codec.encode(event);
+
+        ByteRecord record = StreamRecords.newRecord()
+                .in(serialize(streamPrefix() + event.body().orderId()))
+                .ofBytes(Map.of(serialize(PAYLOAD), payload));
+
+        RecordId recordId = redisTemplate.execute((RedisCallback<RecordId>) connection -> connection.streamCommands().xAdd(record));
+
+        log.info("Event was stored in stream: '{}', full message: '{}'. Record id: {}",
+                streamPrefix() + event.body().orderId(), event, recordId.getValue());
+
+        takeSnapshotIfTerminal(event);
+    }
+
+    /**
+     * The version check and the append are done by a single Lua script, the version is the length of the aggregate stream.
+     */
+    @Override
+    public void store(Message event, long expectedVersion) {
+        if (expectedVersion == ANY_VERSION) {
+            store(event);
+            return;
         }
 
-        log.info("Storing event: {}", messageJsonAsString);
+        var stream = streamPrefix() + event.body().orderId();
 
-        ObjectRecord<String, String> record = StreamRecords.newRecord()
-                .ofObject(messageJsonAsString)
-                .withStreamKey(streamPrefix() + event.body().orderId());
+        String recordId = redisTemplate.execute(STORE_SCRIPT, RedisSerializer.byteArray(), RedisSerializer.string(),
+                List.of(stream, archivedKey(event.body().orderId())), codec.encode(event), serialize(String.valueOf(expectedVersion)));
+        if (recordId == null) {
+            throw new EventVersionConflictException(event.body().orderId(), expectedVersion);
+        }
 
-        RecordId recordId = redisTemplate.opsForStream()
-                .add(record);
+        log.info("Event was stored in stream: '{}' in version {}, full message: '{}'. Record id: {}",
+                stream, expectedVersion + 1, event, recordId);
 
-        log.info("Event was stored in stream: '{}', full message: '{}'. Record id: {}",
-                streamPrefix() + event.body().orderId(), messageJsonAsString, recordId.getValue());
+        takeSnapshotIfTerminal(event);
+    }
+
+    /**
+     * When events are published on Redis streams, the event is serialized once and appended to both
+     * the aggregate stream and the channel stream by a single Lua script, so they can't get out of sync.
+     * Only the channel record gets copies of the header fields. Both keys are in different hash slots, so it works only
+     * on a standalone Redis or a single shard cluster, Redis Cluster rejects the script with a CROSSSLOT error.
+     */
+    @Override
+    public void storeAndPublish(Message event, long expectedVersion, MessagePublisher publisher) {
+        if (!(publisher instanceof RedisStreamPublisher streamPublisher)) {
+            EventStore.super.storeAndPublish(event, expectedVersion, publisher);
+            return;
+        }
+
+        var stream = streamPrefix() + event.body().orderId();
+        var channel = streamPublisher.streamOf(event);
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        List<String> recordIds = redisTemplate.execute(STORE_AND_PUBLISH_SCRIPT, RedisSerializer.byteArray(), (RedisSerializer) RedisSerializer.string(),
+                List.of(stream, channel, archivedKey(event.body().orderId())), scriptArgs(event, codec.encode(event), serialize(String.valueOf(expectedVersion))));
+        if (recordIds == null) {
+            throw new EventVersionConflictException(event.body().orderId(), expectedVersion);
+        }
+
+        log.info("Event was stored in stream: '{}' and published on channel: '{}', full message: '{}'. Record ids: {}",
+                stream, channel, event, recordIds);
+
+        takeSnapshotIfTerminal(event);
     }
 
     @Override
     public List<Message> getEventsForOrder(String orderId) {
+        return getEventStream(orderId).events();
+    }
+
+    /**
+     * An aggregate that is no longer kept in Redis is looked up in the archive, if there is one. When it's archived,
+     * its version is kept in an <code>archived::[stream]</code> key, so events appended later, e.g. a tip added
+     * to a completed order, go to a new stream that continues the archived one, and version checks count both.
+     */
+    @Override
+    public EventStream getEventStream(String orderId) {
         log.info("Fetching events from '{}{}' Redis stream", streamPrefix(), orderId);
-        return getAllMessagesInStream(streamPrefix() + orderId);
+        var history = loadHistory(orderId);
+
+        if (history.events().isEmpty() && archive != null) {
+            return archive.find(orderId)
+                    .map(events -> {
+                        markArchived(orderId, events.size());
+                        return new EventStream(orderId, events, null, events.size());
+                    })
+                    .orElseGet(() -> new EventStream(orderId, List.of(), null, 0));
+        }
+
+        if (snapshotSerializer != null && history.eventsSinceSnapshot() >= snapshotFrequency) {
+            storeSnapshot(orderId, history);
+        }
+        return new EventStream(orderId, history.events(), history.lastRecordId(), history.version());
+    }
+
+    /**
+     * Rebuilds the aggregate as it was at a given time. Stream record ids start with the time they were appended at,
+     * so the stream is read with XRANGE bounded by that time and later events are neither sent nor decoded.
+     * A snapshot is reused only if it was taken at a record that is not later than the given time.
+     */
+    @Override
+    public List<Message> getEventsForOrder(String orderId, Instant asOf) {
+        log.info("Fetching events from '{}{}' Redis stream as of {}", streamPrefix(), orderId, asOf);
+        var upToRecordId = String.valueOf(asOf.toEpochMilli());
+        var snapshot = (snapshotSerializer == null ? Optional.<Snapshot>empty() : loadSnapshot(orderId))
+                .filter(s -> timestampOf(s.recordId()) <= asOf.toEpochMilli());
+
+        List<Message> events = new ArrayList<>();
+        snapshot.ifPresent(s -> events.add(s.message()));
+        if (snapshot.isEmpty() && archivedVersion(orderId) > 0) {
+            archivedEvents(orderId).stream()
+                    .filter(event -> !event.header().createdAt().isAfter(asOf))
+                    .forEach(events::add);
+        }
+        new StreamPageIterator(streamKey(orderId), snapshot.map(Snapshot::recordId).orElse(null), upToRecordId)
+                .forEachRemaining(record -> events.add(mapToDomainEvent(payloadOf(record))));
+
+        if (events.isEmpty() && archive != null && !Boolean.TRUE.equals(redisTemplate.hasKey(streamKey(orderId)))) {
+            return archive.find(orderId).stream()
+                    .flatMap(List::stream)
+                    .filter(event -> !event.header().createdAt().isAfter(asOf))
+                    .toList();
+        }
+        return events;
     }
 
-    private List<Message> getAllMessagesInStream(String stream) {
+    /**
+     * Reads only events that were appended after a given record of the aggregate in a given version,
+     * snapshots are not taken into account.
+     */
+    public EventStream getEventStreamAfter(String orderId, String afterRecordId, long afterVersion) {
+        log.info("Fetching events from '{}{}' Redis stream after '{}' record", streamPrefix(), orderId, afterRecordId);
+        List<Message> events = new ArrayList<>();
+        var records = new StreamPageIterator(streamPrefix() + orderId, afterRecordId);
+        var lastRecordId = afterRecordId;
 
-        var streamReadOptions = StreamReadOptions.empty()
-                .block(Duration.ofMillis(1000))
-                .count(100);
+        while (records.hasNext()) {
+            var record = records.next();
+            events.add(mapToDomainEvent(payloadOf(record)));
+            lastRecordId = record.getId().getValue();
+        }
+        return new EventStream(orderId, events, lastRecordId, afterVersion + events.size());
+    }
 
-        List<ObjectRecord<String, String>> objectRecords = redisTemplate.opsForStream()
-                .read(String.class, streamReadOptions, StreamOffset.create(stream, ReadOffset.from("0")));
+    /**
+     * Lazy variant of {@link #getEventsForOrder(String)}, next page of events is fetched from Redis only when
+     * the previous one was consumed, so a replay can start before the last page arrives.
+     */
+    @Override
+    public Stream<Message> streamEventsForOrder(String orderId) {
+        log.info("Streaming events from '{}{}' Redis stream", streamPrefix(), orderId);
+        var snapshot = snapshotSerializer == null ? Optional.<Snapshot>empty() : loadSnapshot(orderId);
+        var archived = snapshot.isEmpty() && archivedVersion(orderId) > 0;
+        if (snapshot.isEmpty() && !archived && archive != null && !Boolean.TRUE.equals(redisTemplate.hasKey(streamKey(orderId)))) {
+            return archive.find(orderId).stream().flatMap(List::stream);
+        }
+        var records = new StreamPageIterator(streamPrefix() + orderId, snapshot.map(Snapshot::recordId).orElse(null));
 
-        return objectRecords.stream()
-                .map(Record::getValue)
-                .map(this::mapToJsonNode)
-                .map(this::mapToDomainEvent)
+        var events = StreamSupport.stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .map(this::payloadOf)
+                .map(this::mapToDomainEvent);
+
+        if (archived) {
+            return Stream.concat(archivedEvents(orderId).stream(), events);
+        }
+        return snapshot.map(s -> Stream.concat(Stream.of(s.message()), events)).orElse(events);
+    }
+
+    /**
+     * Loads snapshots of all aggregates in one pipeline and streams after them in another one, each pipeline is
+     * sent to Redis in a single flush. Decoding is done in parallel, snapshots are not taken here.
+     */
+    @Override
+    public Map<String, List<Message>> getEventsForOrders(Collection<String> orderIds) {
+        var ids = List.copyOf(new LinkedHashSet<>(orderIds));
+        log.info("Fetching events of {} aggregate(s) from '{}' Redis streams", ids.size(), streamPrefix());
+
+        List<Object> snapshotEntries = snapshotSerializer == null ?
+                Collections.nCopies(ids.size(), null) :
+                pipelined(connection -> ids.forEach(orderId -> connection.hashCommands().hGetAll(serialize(snapshotKey(orderId)))));
+
+        @SuppressWarnings("unchecked")
+        List<Optional<Snapshot>> snapshots = IntStream.range(0, ids.size()).parallel()
+                .mapToObj(i -> toSnapshot(ids.get(i), (Map<byte[], byte[]>) snapshotEntries.get(i)))
                 .toList();
+
+        List<Object> archivedVersions = archive == null ?
+                Collections.nCopies(ids.size(), null) :
+                pipelined(connection -> ids.forEach(orderId -> connection.stringCommands().get(serialize(archivedKey(orderId)))));
+
+        var records = pipelined(connection -> IntStream.range(0, ids.size()).forEach(i -> {
+            var afterRecordId = snapshots.get(i).map(Snapshot::recordId).orElse(null);
+            var range = afterRecordId == null ? Range.<String>unbounded() : Range.rightUnbounded(Range.Bound.exclusive(afterRecordId));
+            connection.streamCommands().xRange(serialize(streamKey(ids.get(i))), range, Limit.unlimited());
+        }));
+
+        @SuppressWarnings("unchecked")
+        List<List<Message>> events = IntStream.range(0, ids.size()).parallel()
+                .mapToObj(i -> toEvents(ids.get(i), snapshots.get(i), archivedVersions.get(i) != null, (List<ByteRecord>) records.get(i)))
+                .toList();
+
+        Map<String, List<Message>> eventsByOrder = new LinkedHashMap<>();
+        IntStream.range(0, ids.size()).forEach(i -> eventsByOrder.put(ids.get(i), events.get(i)));
+        return eventsByOrder;
+    }
+
+    protected int readPageSize() {
+        return DEFAULT_READ_PAGE_SIZE;
     }
 
-    private JsonNode mapToJsonNode(String eventAsString) {
-        try {
-            return objectMapper.readTree(eventAsString);
-        } catch (JsonProcessingException e) {
-            log.error("Failed to parse event to json: {}", eventAsString);
-            throw new RuntimeException("Parsing error", e);
+    /**
+     * Walks through ids of all aggregates kept in this store with SCAN, so Redis is not blocked by a single KEYS call.
+     */
+    void forEachAggregate(Consumer<String> action) {
+        var options = ScanOptions.scanOptions().match(streamPrefix() + "*").count(readPageSize()).build();
+        try (var keys = redisTemplate.scan(options)) {
+            keys.forEachRemaining(key -> action.accept(key.substring(streamPrefix().length())));
         }
     }
 
-    private Message mapToDomainEvent(JsonNode eventAsJson) {
-        var eventType = eventAsJson.get("header").get("type").asText();
-        var eventBody =  eventAsJson.get("body");
-        var classType = getClassType(eventType);
-        return new Message(mapEventHeader(eventAsJson), mapEventBody(eventBody, classType));
+    /**
+     * Removes a stream of an aggregate and its snapshot, unless new events were stored in it in the meantime,
+     * and keeps the version of the aggregate in its <code>archived::</code> key.
+     */
+    boolean delete(String orderId, long expectedVersion) {
+        Long deleted = redisTemplate.execute(DELETE_SCRIPT, List.of(streamKey(orderId), snapshotKey(orderId), archivedKey(orderId)),
+                String.valueOf(expectedVersion));
+        return deleted != null && deleted > 0;
+    }
+
+    String streamKey(String orderId) {
+        return streamPrefix() + orderId;
     }
 
-    private Header mapEventHeader(JsonNode eventAsJson) {
-        try {
-            return objectMapper.treeToValue(eventAsJson.get("header"), Header.class);
-        } catch (JsonProcessingException e) {
-            log.error("Failed to parse event header json: {}", eventAsJson);
-            throw new RuntimeException("Parsing error", e);
+    String snapshotKey(String orderId) {
+        return SNAPSHOT_PREFIX + streamPrefix() + orderId;
+    }
+
+    String archivedKey(String orderId) {
+        return ARCHIVED_PREFIX + streamPrefix() + orderId;
+    }
+
+    /**
+     * The last event of an aggregate kept in its stream, read with a single XREVRANGE.
+     */
+    Optional<Message> getLastEvent(String orderId) {
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xRevRange(serialize(streamKey(orderId)), Range.unbounded(), Limit.limit().count(1)));
+        return records == null || records.isEmpty() ? Optional.empty() : Optional.of(mapToDomainEvent(payloadOf(records.get(0))));
+    }
+
+    /**
+     * All events of an aggregate, including archived ones, without snapshots.
+     */
+    EventStream getFullEventStream(String orderId) {
+        var archivedVersion = archivedVersion(orderId);
+        var stream = getEventStreamAfter(orderId, null, archivedVersion);
+        if (archivedVersion == 0) {
+            return stream;
+        }
+
+        List<Message> events = new ArrayList<>(archivedEvents(orderId));
+        events.addAll(stream.events());
+        return new EventStream(orderId, events, stream.lastRecordId(), stream.version());
+    }
+
+    private long archivedVersion(String orderId) {
+        if (archive == null) {
+            return 0;
+        }
+        byte[] version = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(serialize(archivedKey(orderId))));
+        return version == null ? 0 : Long.parseLong(RedisSerializer.string().deserialize(version));
+    }
+
+    private List<Message> archivedEvents(String orderId) {
+        return archive.find(orderId).orElse(List.of());
+    }
+
+    /**
+     * Aggregates archived before their version was kept in Redis get it on first read.
+     */
+    private void markArchived(String orderId, long version) {
+        redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.stringCommands().setNX(serialize(archivedKey(orderId)), serialize(String.valueOf(version))));
+    }
+
+    private History loadHistory(String orderId) {
+        var snapshot = snapshotSerializer == null ? Optional.<Snapshot>empty() : loadSnapshot(orderId);
+        var archivedVersion = snapshot.isEmpty() ? archivedVersion(orderId) : 0;
+
+        List<ByteRecord> records = new ArrayList<>();
+        new StreamPageIterator(streamPrefix() + orderId, snapshot.map(Snapshot::recordId).orElse(null))
+                .forEachRemaining(records::add);
+
+        List<Message> events = new ArrayList<>(records.size() + 1);
+        snapshot.ifPresent(s -> events.add(s.message()));
+        if (archivedVersion > 0) {
+            events.addAll(archivedEvents(orderId));
         }
+        records.stream()
+                .map(this::payloadOf)
+                .map(this::mapToDomainEvent)
+                .forEach(events::add);
+
+        var lastRecordId = records.isEmpty() ?
+                snapshot.map(Snapshot::recordId).orElse(null) :
+                records.get(records.size() - 1).getId().getValue();
+
+        var version = snapshot.map(Snapshot::version).orElse(archivedVersion) + records.size();
+        return new History(events, records.size(), lastRecordId, version);
+    }
+
+    private List<Message> toEvents(String orderId, Optional<Snapshot> snapshot, boolean archived, List<ByteRecord> stream) {
+        var records = stream == null ? List.<ByteRecord>of() : stream;
+        if (snapshot.isEmpty() && records.isEmpty()) {
+            return archive == null ? List.of() : archive.find(orderId).orElse(List.of());
+        }
+
+        List<Message> events = new ArrayList<>(records.size() + 1);
+        snapshot.ifPresent(s -> events.add(s.message()));
+        if (snapshot.isEmpty() && archived) {
+            events.addAll(archivedEvents(orderId));
+        }
+        records.stream()
+                .map(this::payloadOf)
+                .map(this::mapToDomainEvent)
+                .forEach(events::add);
+        return events;
+    }
+
+    private List<Object> pipelined(Consumer<RedisConnection> commands) {
+        return redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            commands.accept(connection);
+            return connection.closePipeline();
+        });
+    }
+
+    private List<ByteRecord> getRecordsPage(String stream, String afterRecordId, String upToRecordId) {
+        Range.Bound<String> lowerBound = afterRecordId == null ? Range.Bound.unbounded() : Range.Bound.exclusive(afterRecordId);
+        Range.Bound<String> upperBound = upToRecordId == null ? Range.Bound.unbounded() : Range.Bound.inclusive(upToRecordId);
+        var range = Range.of(lowerBound, upperBound);
+
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xRange(serialize(stream), range, Limit.limit().count(readPageSize())));
+
+        return records == null ? List.of() : records;
+    }
+
+    private byte[] payloadOf(ByteRecord record) {
+        return record.deserialize(RedisSerializer.string(), RedisSerializer.string(), RedisSerializer.byteArray())
+                .getValue()
+                .get(PAYLOAD);
     }
 
-    private <T extends DomainMessageBody> T mapEventBody(JsonNode eventBody, Class<T> valueType) {
-        try {
-            return objectMapper.treeToValue(eventBody, valueType);
-        } catch (JsonProcessingException e) {
-            log.error("Failed to parse event json: {} to '{}' class", eventBody, valueType.getCanonicalName());
-            throw new RuntimeException("Parsing error", e);
+    private void takeSnapshotIfTerminal(Message event) {
+        if (snapshotSerializer != null && snapshotSerializer.isTerminal(event)) {
+            log.info("'{}' aggregate reached its terminal state, taking a snapshot of it", event.body().orderId());
+            var history = loadHistory(event.body().orderId());
+            storeSnapshot(event.body().orderId(), history);
         }
     }
+
+    private Optional<Snapshot> loadSnapshot(String orderId) {
+        Map<byte[], byte[]> entries = redisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection ->
+                connection.hashCommands().hGetAll(serialize(SNAPSHOT_PREFIX + streamPrefix() + orderId)));
+        return toSnapshot(orderId, entries);
+    }
+
+    private Optional<Snapshot> toSnapshot(String orderId, Map<byte[], byte[]> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Map<String, byte[]> snapshot = new HashMap<>();
+        entries.forEach((field, value) -> snapshot.put(RedisSerializer.string().deserialize(field), value));
+
+        var recordId = RedisSerializer.string().deserialize(snapshot.get(SNAPSHOT_RECORD_ID));
+        log.info("Found a snapshot of '{}' aggregate taken at '{}' record", orderId, recordId);
+        var message = mapToDomainEvent(snapshot.get(SNAPSHOT_PAYLOAD));
+        var version = Long.parseLong(RedisSerializer.string().deserialize(snapshot.get(SNAPSHOT_VERSION)));
+        return Optional.of(new Snapshot(recordId, version, message));
+    }
+
+    private void storeSnapshot(String orderId, History history) {
+        if (history.events().isEmpty()) {
+            return;
+        }
+
+        var snapshot = Map.of(
+                serialize(SNAPSHOT_RECORD_ID), serialize(history.lastRecordId()),
+                serialize(SNAPSHOT_VERSION), serialize(String.valueOf(history.version())),
+                serialize(SNAPSHOT_PAYLOAD), codec.encode(snapshotSerializer.snapshot(orderId, history.events()))
+        );
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            connection.hashCommands().hMSet(serialize(SNAPSHOT_PREFIX + streamPrefix() + orderId), snapshot);
+            return null;
+        });
+
+        log.info("Snapshot of '{}' aggregate was stored, it covers events up to '{}' record", orderId, history.lastRecordId());
+    }
+
+    private static long timestampOf(String recordId) {
+        return Long.parseLong(recordId.substring(0, recordId.indexOf('-')));
+    }
+
+    private static Object[] scriptArgs(Message event, byte[]... args) {
+        List<byte[]> scriptArgs = new ArrayList<>(List.of(args));
+        scriptArgs.addAll(StreamRecordFields.headerArgs(event.header()));
+        return scriptArgs.toArray();
+    }
+
+    private static byte[] serialize(String value) {
+        return RedisSerializer.string().serialize(value);
+    }
+
+    private Message mapToDomainEvent(byte[] payload) {
+        var event = codec.decodeMessage(payload);
+        if (event.body() == null) {
+            log.error("There is not logic for mapping {} event from a store", event.header().type());
+            throw new RuntimeException("Unknown event type: " + event.header().type());
+        }
+        return event;
+    }
+
+    /**
+     * Walks through the stream with XRANGE, page by page, starting after a given record and optionally
+     * ending at a given one.
+     */
+    private class StreamPageIterator implements Iterator<ByteRecord> {
+
+        private final String stream;
+        private final String upToRecordId;
+        private String lastRecordId;
+        private Iterator<ByteRecord> page = Collections.emptyIterator();
+        private boolean lastPage = false;
+
+        private StreamPageIterator(String stream, String afterRecordId) {
+            this(stream, afterRecordId, null);
+        }
+
+        private StreamPageIterator(String stream, String afterRecordId, String upToRecordId) {
+            this.stream = stream;
+            this.upToRecordId = upToRecordId;
+            this.lastRecordId = afterRecordId;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!page.hasNext() && !lastPage) {
+                var records = getRecordsPage(stream, lastRecordId, upToRecordId);
+                lastPage = records.size() < readPageSize();
+                page = records.iterator();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public ByteRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("There are no more records in '" + stream + "' stream");
+            }
+            var record = page.next();
+            lastRecordId = record.getId().getValue();
+            return record;
+        }
+    }
+
+    private record Snapshot(String recordId, long version, Message message) {}
+
+    private record History(List<Message> events, int eventsSinceSnapshot, String lastRecordId, long version) {}
 }
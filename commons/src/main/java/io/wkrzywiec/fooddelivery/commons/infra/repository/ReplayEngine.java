@@ -0,0 +1,185 @@
+package io.wkrzywiec.fooddelivery.commons.infra.repository;
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Feeds events of every aggregate kept in a store to a projection, e.g. to rebuild a read model from scratch.
+ * Streams of aggregates are found with SCAN, each page of keys is split into batches that are loaded with
+ * {@link RedisEventStore#getEventsForOrders} and projected on a fork-join pool.
+ * <p>
+ * After each page the SCAN cursor is saved in a <code>replay::[name]</code> hash, so a replay that was interrupted
+ * continues from the last finished page, and the hash is removed when the replay is done. SCAN may return
+ * a key more than once and a page may be replayed again after a restart, so projections have to be idempotent.
+ */
+@Slf4j
+public class ReplayEngine {
+
+    public static final int DEFAULT_SCAN_COUNT = 1000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final double NO_RATE_LIMIT = 0;
+
+    private static final String CHECKPOINT_PREFIX = "replay::";
+    private static final String CURSOR = "cursor";
+    private static final String AGGREGATES = "aggregates";
+    private static final String EVENTS = "events";
+    private static final String FIRST_CURSOR = "0";
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCAN_SCRIPT = RedisScript.of("""
+            return redis.call('SCAN', ARGV[1], 'MATCH', ARGV[2], 'COUNT', ARGV[3], 'TYPE', 'stream')
+            """, List.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisEventStore eventStore;
+    private final int parallelism;
+    private final int scanCount;
+    private final int batchSize;
+    private final double aggregatesPerSecond;
+
+    public ReplayEngine(RedisTemplate<String, String> redisTemplate, RedisEventStore eventStore) {
+        this(redisTemplate, eventStore, Runtime.getRuntime().availableProcessors(), DEFAULT_SCAN_COUNT, DEFAULT_BATCH_SIZE, NO_RATE_LIMIT);
+    }
+
+    public ReplayEngine(RedisTemplate<String, String> redisTemplate, RedisEventStore eventStore, int parallelism,
+                        int scanCount, int batchSize, double aggregatesPerSecond) {
+        this.redisTemplate = redisTemplate;
+        this.eventStore = eventStore;
+        this.parallelism = parallelism;
+        this.scanCount = scanCount;
+        this.batchSize = batchSize;
+        this.aggregatesPerSecond = aggregatesPerSecond;
+    }
+
+    public ReplayProgress replay(String name, BiConsumer<String, List<Message>> projection) {
+        return replay(name, projection, progress -> {});
+    }
+
+    /**
+     * Replays all aggregates, or the ones that were left when a replay with the same name was interrupted.
+     * The listener is notified after each page of keys.
+     */
+    public ReplayProgress replay(String name, BiConsumer<String, List<Message>> projection, Consumer<ReplayProgress> listener) {
+        var checkpoint = loadCheckpoint(name);
+        var cursor = checkpoint.getOrDefault(CURSOR, FIRST_CURSOR);
+        var aggregates = new AtomicLong(Long.parseLong(checkpoint.getOrDefault(AGGREGATES, "0")));
+        var events = new AtomicLong(Long.parseLong(checkpoint.getOrDefault(EVENTS, "0")));
+        log.info("Starting '{}' replay of '{}' streams from '{}' cursor", name, eventStore.streamPrefix(), cursor);
+
+        var pool = new ForkJoinPool(parallelism);
+        var startedAt = System.nanoTime();
+        var replayedNow = 0L;
+        try {
+            do {
+                var page = scan(cursor);
+                cursor = page.cursor();
+
+                var batches = batches(page.orderIds());
+                pool.submit(() -> batches.parallelStream().forEach(batch ->
+                        eventStore.getEventsForOrders(batch).forEach((orderId, aggregateEvents) -> {
+                            projection.accept(orderId, aggregateEvents);
+                            events.addAndGet(aggregateEvents.size());
+                        })
+                )).join();
+
+                aggregates.addAndGet(page.orderIds().size());
+                replayedNow += page.orderIds().size();
+                saveCheckpoint(name, cursor, aggregates.get(), events.get());
+
+                var progress = new ReplayProgress(name, aggregates.get(), events.get(), elapsedSince(startedAt), FIRST_CURSOR.equals(cursor));
+                log.info("'{}' replay: {} aggregate(s) with {} event(s) replayed in {}", name, progress.aggregates(), progress.events(), progress.elapsed());
+                listener.accept(progress);
+
+                throttle(replayedNow, startedAt);
+            } while (!FIRST_CURSOR.equals(cursor));
+        } finally {
+            pool.shutdown();
+        }
+
+        redisTemplate.delete(CHECKPOINT_PREFIX + name);
+        log.info("'{}' replay of '{}' streams is finished", name, eventStore.streamPrefix());
+        return new ReplayProgress(name, aggregates.get(), events.get(), elapsedSince(startedAt), true);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private ScanPage scan(String cursor) {
+        List<Object> result = redisTemplate.execute(SCAN_SCRIPT, RedisSerializer.string(), (RedisSerializer) RedisSerializer.string(),
+                List.of(), cursor, eventStore.streamPrefix() + "*", String.valueOf(scanCount));
+        var keys = (List<String>) result.get(1);
+        var orderIds = keys.stream().map(key -> key.substring(eventStore.streamPrefix().length())).toList();
+        return new ScanPage((String) result.get(0), orderIds);
+    }
+
+    private List<List<String>> batches(List<String> orderIds) {
+        return IntStream.range(0, (orderIds.size() + batchSize - 1) / batchSize)
+                .mapToObj(i -> orderIds.subList(i * batchSize, Math.min(orderIds.size(), (i + 1) * batchSize)))
+                .toList();
+    }
+
+    /**
+     * Sleeps for as long as it takes to stay below the rate limit, on average since the replay was started.
+     */
+    private void throttle(long replayed, long startedAt) {
+        if (aggregatesPerSecond <= NO_RATE_LIMIT) {
+            return;
+        }
+
+        var ahead = Duration.ofMillis((long) (replayed * 1000 / aggregatesPerSecond)).minus(elapsedSince(startedAt));
+        if (ahead.isNegative() || ahead.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(ahead.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Replay was interrupted", e);
+        }
+    }
+
+    private Map<String, String> loadCheckpoint(String name) {
+        Map<byte[], byte[]> entries = redisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection ->
+                connection.hashCommands().hGetAll(serialize(CHECKPOINT_PREFIX + name)));
+
+        Map<String, String> checkpoint = new HashMap<>();
+        if (entries != null) {
+            entries.forEach((field, value) -> checkpoint.put(RedisSerializer.string().deserialize(field), RedisSerializer.string().deserialize(value)));
+        }
+        return checkpoint;
+    }
+
+    private void saveCheckpoint(String name, String cursor, long aggregates, long events) {
+        var checkpoint = Map.of(
+                serialize(CURSOR), serialize(cursor),
+                serialize(AGGREGATES), serialize(String.valueOf(aggregates)),
+                serialize(EVENTS), serialize(String.valueOf(events))
+        );
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            connection.hashCommands().hMSet(serialize(CHECKPOINT_PREFIX + name), checkpoint);
+            return null;
+        });
+    }
+
+    private static Duration elapsedSince(long startedAt) {
+        return Duration.ofNanos(System.nanoTime() - startedAt);
+    }
+
+    private static byte[] serialize(String value) {
+        return RedisSerializer.string().serialize(value);
+    }
+
+    public record ReplayProgress(String name, long aggregates, long events, Duration elapsed, boolean finished) {}
+
+    private record ScanPage(String cursor, List<String> orderIds) {}
+}
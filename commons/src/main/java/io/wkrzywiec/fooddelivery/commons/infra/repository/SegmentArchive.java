@@ -0,0 +1,280 @@
+package io.wkrzywiec.fooddelivery.commons.infra.repository;
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps events of aggregates that will never change again in append-only segment files on a local disk.
+ * Each call of {@link #append(Map)} writes a new segment with aggregates sorted by their ids, every aggregate is
+ * a single LZ4 compressed block. Next to a segment there is a sparse index with every n-th aggregate id and
+ * its position, so a lookup reads at most n block headers in each segment whose id range covers the aggregate.
+ * A segment becomes visible only after both files were fully written.
+ */
+@Slf4j
+public class SegmentArchive {
+
+    public static final int DEFAULT_INDEX_INTERVAL = 64;
+
+    private static final String SEGMENT_EXTENSION = ".segment";
+    private static final String INDEX_EXTENSION = ".index";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final int SEGMENT_NUMBER_LENGTH = 10;
+
+    private final Path directory;
+    private final MessageCodec codec;
+    private final int indexInterval;
+    private final LZ4Compressor compressor;
+    private final LZ4FastDecompressor decompressor;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+
+    public SegmentArchive(Path directory, MessageCodec codec) {
+        this(directory, codec, DEFAULT_INDEX_INTERVAL);
+    }
+
+    public SegmentArchive(Path directory, MessageCodec codec, int indexInterval) {
+        this.directory = directory;
+        this.codec = codec;
+        this.indexInterval = indexInterval;
+
+        var lz4Factory = LZ4Factory.fastestInstance();
+        this.compressor = lz4Factory.fastCompressor();
+        this.decompressor = lz4Factory.fastDecompressor();
+
+        loadSegments();
+    }
+
+    /**
+     * Writes all given aggregates into a new segment. Both files and the directory are forced to the disk
+     * before it returns, so aggregates can be removed from Redis right after it.
+     */
+    public synchronized void append(Map<String, List<Message>> aggregates) {
+        if (aggregates.isEmpty()) {
+            return;
+        }
+
+        var sorted = new TreeMap<>(aggregates);
+        var index = new TreeMap<String, Long>();
+        Path segmentFile = null;
+
+        try {
+            var tempSegment = createTempSegment();
+            var name = tempSegment.name();
+            segmentFile = directory.resolve(name + SEGMENT_EXTENSION);
+            var indexFile = directory.resolve(name + INDEX_EXTENSION);
+
+            try (var channel = tempSegment.channel();
+                 var output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+                var offset = 0L;
+                var position = 0;
+                for (var aggregate : sorted.entrySet()) {
+                    if (position++ % indexInterval == 0) {
+                        index.put(aggregate.getKey(), offset);
+                    }
+                    offset += writeBlock(output, aggregate.getKey(), aggregate.getValue());
+                }
+                output.flush();
+                channel.force(true);
+            }
+
+            var tempIndexFile = directory.resolve(name + INDEX_EXTENSION + TEMP_EXTENSION);
+            try (var channel = FileChannel.open(tempIndexFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 var output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+                output.writeInt(index.size());
+                for (var entry : index.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    output.writeLong(entry.getValue());
+                }
+                output.writeUTF(sorted.lastKey());
+                output.flush();
+                channel.force(true);
+            }
+
+            Files.move(directory.resolve(name + SEGMENT_EXTENSION + TEMP_EXTENSION), segmentFile, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tempIndexFile, indexFile, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory();
+        } catch (IOException e) {
+            log.error("Failed to write '{}' archive segment", segmentFile);
+            throw new RuntimeException("Archive error", e);
+        }
+
+        segments.add(new Segment(segmentFile, index, sorted.lastKey()));
+        log.info("{} aggregate(s) were archived in '{}' segment", sorted.size(), segmentFile);
+    }
+
+    /**
+     * Reserves the next segment number after all segment files found on the disk, including leftovers
+     * of interrupted writes, by creating its temporary segment file. A number taken in the meantime
+     * by another writer is skipped.
+     */
+    private TempSegment createTempSegment() throws IOException {
+        var number = lastSegmentNumber();
+        while (true) {
+            var name = String.format("%010d", ++number);
+            try {
+                var channel = FileChannel.open(directory.resolve(name + SEGMENT_EXTENSION + TEMP_EXTENSION),
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                return new TempSegment(name, channel);
+            } catch (FileAlreadyExistsException e) {
+                log.warn("'{}' archive segment is already being written, trying the next one", name);
+            }
+        }
+    }
+
+    private long lastSegmentNumber() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(file -> file.length() > SEGMENT_NUMBER_LENGTH && file.substring(0, SEGMENT_NUMBER_LENGTH).chars().allMatch(Character::isDigit))
+                    .mapToLong(file -> Long.parseLong(file.substring(0, SEGMENT_NUMBER_LENGTH)))
+                    .max()
+                    .orElse(0);
+        }
+    }
+
+    private void forceDirectory() throws IOException {
+        try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Looks for an aggregate in segments, starting with the newest one.
+     */
+    public Optional<List<Message>> find(String orderId) {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            var events = segments.get(i).find(orderId);
+            if (events.isPresent()) {
+                return events;
+            }
+        }
+        return Optional.empty();
+    }
+
+    private long writeBlock(DataOutputStream output, String orderId, List<Message> events) throws IOException {
+        var frames = new ByteArrayOutputStream();
+        for (var event : events) {
+            var payload = codec.encode(event);
+            frames.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(payload.length).array());
+            frames.writeBytes(payload);
+        }
+
+        var uncompressed = frames.toByteArray();
+        var compressed = compressor.compress(uncompressed);
+        var id = orderId.getBytes(StandardCharsets.UTF_8);
+
+        output.writeShort(id.length);
+        output.write(id);
+        output.writeInt(uncompressed.length);
+        output.writeInt(compressed.length);
+        output.write(compressed);
+        return Short.BYTES + id.length + 2L * Integer.BYTES + compressed.length;
+    }
+
+    private void loadSegments() {
+        try {
+            Files.createDirectories(directory);
+            try (var files = Files.list(directory)) {
+                var indexFiles = files.filter(file -> file.toString().endsWith(INDEX_EXTENSION)).sorted().toList();
+                for (var indexFile : indexFiles) {
+                    segments.add(loadSegment(indexFile));
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to load archive segments from '{}'", directory);
+            throw new RuntimeException("Archive error", e);
+        }
+        log.info("{} archive segment(s) were loaded from '{}'", segments.size(), directory);
+    }
+
+    private Segment loadSegment(Path indexFile) throws IOException {
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            var index = new TreeMap<String, Long>();
+            var entries = input.readInt();
+            for (int i = 0; i < entries; i++) {
+                index.put(input.readUTF(), input.readLong());
+            }
+            var lastOrderId = input.readUTF();
+
+            var name = indexFile.getFileName().toString().replace(INDEX_EXTENSION, SEGMENT_EXTENSION);
+            return new Segment(indexFile.resolveSibling(name), index, lastOrderId);
+        }
+    }
+
+    private record TempSegment(String name, FileChannel channel) {}
+
+    private class Segment {
+
+        private final Path file;
+        private final TreeMap<String, Long> index;
+        private final String lastOrderId;
+
+        private Segment(Path file, TreeMap<String, Long> index, String lastOrderId) {
+            this.file = file;
+            this.index = index;
+            this.lastOrderId = lastOrderId;
+        }
+
+        private Optional<List<Message>> find(String orderId) {
+            var from = index.floorEntry(orderId);
+            if (from == null || orderId.compareTo(lastOrderId) > 0) {
+                return Optional.empty();
+            }
+
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                channel.position(from.getValue());
+                var input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+
+                for (int i = 0; i < indexInterval; i++) {
+                    var blockOrderId = new String(input.readNBytes(input.readUnsignedShort()), StandardCharsets.UTF_8);
+                    var uncompressedLength = input.readInt();
+                    var compressedLength = input.readInt();
+
+                    var comparison = blockOrderId.compareTo(orderId);
+                    if (comparison > 0) {
+                        return Optional.empty();
+                    }
+                    if (comparison < 0) {
+                        input.skipNBytes(compressedLength);
+                        continue;
+                    }
+
+                    var compressed = input.readNBytes(compressedLength);
+                    return Optional.of(readEvents(decompressor.decompress(compressed, uncompressedLength)));
+                }
+                return Optional.empty();
+            } catch (EOFException e) {
+                return Optional.empty();
+            } catch (IOException e) {
+                log.error("Failed to read '{}' archive segment", file);
+                throw new RuntimeException("Archive error", e);
+            }
+        }
+
+        private List<Message> readEvents(byte[] block) {
+            List<Message> events = new ArrayList<>();
+            var frames = ByteBuffer.wrap(block);
+            while (frames.hasRemaining()) {
+                var payload = new byte[frames.getInt()];
+                frames.get(payload);
+                events.add(codec.decodeMessage(payload));
+            }
+            return events;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.wkrzywiec.fooddelivery.commons.infra.repository;
+
+import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+
+import java.util.List;
+
+public interface SnapshotSerializer {
+
+    /**
+     * Folds the history of an aggregate into a single snapshot body. The history may already start with
+     * a previous snapshot, so the aggregate must know how to rebuild itself from it.
+     */
+    DomainMessageBody serialize(List<Message> events);
+
+    /**
+     * Tells whether an aggregate reaches its final state with this event, so no more events will follow it.
+     */
+    boolean isTerminal(Message event);
+
+    /**
+     * Wraps a snapshot body into a message that carries a header of the last event it covers.
+     */
+    default Message snapshot(String orderId, List<Message> events) {
+        var lastEvent = events.get(events.size() - 1);
+        var snapshotBody = serialize(events);
+        var snapshotHeader = new Header(
+                lastEvent.header().messageId(), lastEvent.header().channel(),
+                snapshotBody.getClass().getSimpleName(), orderId, lastEvent.header().createdAt());
+        return new Message(snapshotHeader, snapshotBody);
+    }
+}
@@ -0,0 +1,31 @@
+package io.wkrzywiec.fooddelivery.commons
+
+import io.wkrzywiec.fooddelivery.commons.infra.IdGenerator
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+
+@Subject(IdGenerator)
+class IdGeneratorSpec extends Specification {
+
+    def "Generate increasing ids that start with a creation time"() {
+        given:
+        def time = Instant.parse("2022-08-08T05:30:24.00Z")
+        def generator = IdGenerator.timeOrdered(Clock.fixed(time, ZoneOffset.UTC))
+
+        when: "More ids than a counter can hold in one millisecond are generated"
+        def ids = (1..10_000).collect { generator.nextId() }
+
+        then:
+        ids == ids.toSorted()
+        ids.toSet().size() == ids.size()
+
+        and:
+        def uuid = UUID.fromString(ids.first())
+        uuid.version() == 7
+        uuid.mostSignificantBits >>> 16 == time.toEpochMilli()
+    }
+}
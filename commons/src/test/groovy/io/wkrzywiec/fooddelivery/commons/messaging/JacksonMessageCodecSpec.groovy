@@ -0,0 +1,67 @@
+package io.wkrzywiec.fooddelivery.commons.messaging
+
+import io.wkrzywiec.fooddelivery.commons.incoming.AddTip
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.JacksonMessageCodec
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageTypeRegistry
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.time.Instant
+
+import static io.wkrzywiec.fooddelivery.commons.infra.messaging.JacksonMessageCodec.Format.JSON
+import static io.wkrzywiec.fooddelivery.commons.infra.messaging.JacksonMessageCodec.Format.SMILE
+import static io.wkrzywiec.fooddelivery.commons.infra.messaging.JacksonMessageCodec.NO_COMPRESSION
+
+@Subject(JacksonMessageCodec)
+class JacksonMessageCodecSpec extends Specification {
+
+    private def objectMapper = Jackson2ObjectMapperBuilder.json().build()
+    private def registry = new MessageTypeRegistry(objectMapper, [AddTip])
+    private def header = new Header(UUID.randomUUID().toString(), "orders", "AddTip", "any-order-id", Instant.now())
+    private def message = new Message(header, new AddTip("any-order-id", new BigDecimal(5)))
+
+    def "Decode a value encoded in #format format with compression threshold #threshold"() {
+        given:
+        def writer = new JacksonMessageCodec(objectMapper, registry, format, threshold)
+        def reader = new JacksonMessageCodec(objectMapper, registry)
+
+        when:
+        def payload = writer.encode(message)
+
+        then:
+        reader.decodeMessage(payload) == message
+        reader.decodeHeader(payload) == header
+        reader.decode(writer.encode(header), Header) == header
+
+        where:
+        format | threshold
+        JSON   | NO_COMPRESSION
+        SMILE  | NO_COMPRESSION
+        JSON   | 10
+        SMILE  | 10
+    }
+
+    def "Skip a body of a message type that is not registered"() {
+        given:
+        def codec = new JacksonMessageCodec(objectMapper)
+
+        when:
+        def decoded = codec.decodeMessage(codec.encode(message))
+
+        then:
+        decoded.header() == header
+        decoded.body() == null
+    }
+
+    def "Smile payload is smaller than JSON"() {
+        given:
+        def json = new JacksonMessageCodec(objectMapper, registry, JSON, NO_COMPRESSION).encode(message)
+        def smile = new JacksonMessageCodec(objectMapper, registry, SMILE, NO_COMPRESSION).encode(message)
+
+        expect:
+        smile.length < json.length
+    }
+}
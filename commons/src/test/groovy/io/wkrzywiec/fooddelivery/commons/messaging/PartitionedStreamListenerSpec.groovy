@@ -0,0 +1,165 @@
+package io.wkrzywiec.fooddelivery.commons.messaging
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.wkrzywiec.fooddelivery.commons.incoming.AddTip
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.JacksonMessageCodec
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageTypeRegistry
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.PartitionedStreamListener
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisStreamListener
+import org.springframework.data.redis.connection.stream.MapRecord
+import org.springframework.data.redis.connection.stream.StreamRecords
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.time.Clock
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+
+import static io.wkrzywiec.fooddelivery.commons.infra.messaging.Message.message
+
+@Subject(PartitionedStreamListener)
+class PartitionedStreamListenerSpec extends Specification {
+
+    private def objectMapper = Jackson2ObjectMapperBuilder.json().build()
+    private def codec = new JacksonMessageCodec(objectMapper, new MessageTypeRegistry(objectMapper, [AddTip]))
+    private def meterRegistry = new SimpleMeterRegistry()
+
+    def "Handle messages of each order in order, while orders are handled in parallel"() {
+        given:
+        def tipsByOrder = new ConcurrentHashMap<String, List<BigDecimal>>()
+        def threads = ConcurrentHashMap.newKeySet()
+        def delegate = Stub(RedisStreamListener) {
+            streamName() >> "orders"
+            group() >> "test"
+            onMessage(_) >> { MapRecord<String, String, byte[]> record ->
+                def tip = codec.decodeMessage(record.value.get("payload")).body() as AddTip
+                threads << Thread.currentThread().name
+                sleep(1)
+                tipsByOrder.computeIfAbsent(tip.orderId(), { new CopyOnWriteArrayList() }) << tip.tip()
+            }
+        }
+        def listener = new PartitionedStreamListener(delegate, codec, 4, meterRegistry)
+        listener.start()
+
+        and:
+        def orderIds = (1..8).collect { "order-$it".toString() }
+        def records = (1..10).collectMany { tip ->
+            orderIds.collect { orderId -> record(new AddTip(orderId, new BigDecimal(tip))) }
+        }
+
+        when:
+        listener.onMessages(records)
+
+        then:
+        orderIds.every { tipsByOrder[it] == (1..10).collect { new BigDecimal(it) } }
+        threads.size() > 1
+
+        and:
+        meterRegistry.get("messaging.lane.queue.depth").gauges().size() == 4
+        meterRegistry.get("messaging.lane.processing.time").timers().size() == 4
+
+        cleanup:
+        listener.close()
+    }
+
+    def "Pick a lane by an itemId record field without decoding a payload"() {
+        given:
+        def threadsByOrder = new ConcurrentHashMap<String, Set<String>>()
+        def delegate = Stub(RedisStreamListener) {
+            streamName() >> "orders"
+            group() >> "test"
+            onMessage(_) >> { MapRecord<String, String, byte[]> record ->
+                def orderId = new String(record.value.get("itemId"))
+                threadsByOrder.computeIfAbsent(orderId, { ConcurrentHashMap.newKeySet() }) << Thread.currentThread().name
+            }
+        }
+        def listener = new PartitionedStreamListener(delegate, codec, 4, meterRegistry)
+        listener.start()
+
+        and:
+        def records = (1..5).collectMany { attempt ->
+            (1..8).collect { order ->
+                StreamRecords.newRecord().in("orders").ofMap(["payload": "not a message".bytes, "itemId": "order-$order".toString().bytes])
+            }
+        }
+
+        when:
+        listener.onMessages(records)
+
+        then:
+        threadsByOrder.size() == 8
+        threadsByOrder.values().every { it.size() == 1 }
+        threadsByOrder.values().flatten().toSet().size() > 1
+
+        cleanup:
+        listener.close()
+    }
+
+    def "Hand over records to a decorated listener in the same lanes"() {
+        given:
+        def threads = new ConcurrentHashMap<String, Set<String>>()
+        def recording = { String name ->
+            Stub(RedisStreamListener) {
+                streamName() >> "orders"
+                group() >> "test"
+                onMessage(_) >> { MapRecord<String, String, byte[]> record ->
+                    def orderId = new String(record.value.get("itemId"))
+                    threads.computeIfAbsent(orderId, { ConcurrentHashMap.newKeySet() }) << "$name:${Thread.currentThread().name}".toString()
+                }
+            }
+        }
+        def listener = new PartitionedStreamListener(recording("read"), codec, 4, meterRegistry)
+        def decorated = listener.decorated { recording("retried") }
+        decorated.start()
+
+        when:
+        (1..8).each { order ->
+            def record = StreamRecords.newRecord().in("orders").ofMap(["payload": "".bytes, "itemId": "order-$order".toString().bytes])
+            listener.handle(record)
+            decorated.handle(record)
+        }
+
+        then:
+        threads.size() == 8
+        threads.values().every { it*.split(":")*.getAt(1).toSet().size() == 1 && it.size() == 2 }
+
+        cleanup:
+        listener.close()
+    }
+
+    def "Handle queued messages before lanes are stopped"() {
+        given:
+        def handled = new CopyOnWriteArrayList<BigDecimal>()
+        def delegate = Stub(RedisStreamListener) {
+            streamName() >> "orders"
+            group() >> "test"
+            onMessage(_) >> { MapRecord<String, String, byte[]> record ->
+                sleep(5)
+                handled << (codec.decodeMessage(record.value.get("payload")).body() as AddTip).tip()
+            }
+        }
+        def listener = new PartitionedStreamListener(delegate, codec, 2, meterRegistry)
+        listener.start()
+
+        and:
+        def futures = (1..20).collect { tip -> listener.dispatch(record(new AddTip("order-1", new BigDecimal(tip)))) }
+
+        when:
+        listener.close()
+
+        then:
+        futures.every { it.isDone() && !it.isCompletedExceptionally() }
+        handled == (1..20).collect { new BigDecimal(it) }
+
+        when:
+        listener.dispatch(record(new AddTip("order-1", BigDecimal.ONE)))
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    private MapRecord<String, String, byte[]> record(AddTip body) {
+        StreamRecords.newRecord().in("orders").ofMap(["payload": codec.encode(message("orders", Clock.systemUTC(), body))])
+    }
+}
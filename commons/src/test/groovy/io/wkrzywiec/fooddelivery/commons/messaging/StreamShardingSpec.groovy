@@ -0,0 +1,37 @@
+package io.wkrzywiec.fooddelivery.commons.messaging
+
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.StreamSharding
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.time.Instant
+
+@Subject(StreamSharding)
+class StreamShardingSpec extends Specification {
+
+    private def sharding = new StreamSharding(Set.of("orders"), 4)
+
+    def "Publish all messages of an order on the same shard"() {
+        given:
+        def orderId = UUID.randomUUID().toString()
+
+        when:
+        def streams = (1..10).collect { sharding.streamOf(header("orders", orderId)) }.toSet()
+
+        then:
+        streams.size() == 1
+        streams.first() in sharding.streamsOf("orders")
+    }
+
+    def "Publish messages of other channels on a single stream"() {
+        expect:
+        sharding.streamsOf("ordering-inbox") == ["ordering-inbox"]
+        sharding.streamOf(header("ordering-inbox", "any-order-id")) == "ordering-inbox"
+        sharding.streamsOf("orders") == ["orders:0", "orders:1", "orders:2", "orders:3"]
+    }
+
+    private static Header header(String channel, String orderId) {
+        new Header(UUID.randomUUID().toString(), channel, "AddTip", orderId, Instant.now())
+    }
+}
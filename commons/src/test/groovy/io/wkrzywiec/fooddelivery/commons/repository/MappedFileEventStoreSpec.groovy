@@ -0,0 +1,71 @@
+package io.wkrzywiec.fooddelivery.commons.repository
+
+import io.wkrzywiec.fooddelivery.commons.incoming.AddTip
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.JacksonMessageCodec
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageTypeRegistry
+import io.wkrzywiec.fooddelivery.commons.infra.repository.EventVersionConflictException
+import io.wkrzywiec.fooddelivery.commons.infra.repository.MappedFileEventStore
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.TempDir
+
+import java.nio.file.Path
+import java.time.Instant
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+@Subject(MappedFileEventStore)
+class MappedFileEventStoreSpec extends Specification {
+
+    @TempDir
+    private Path directory
+
+    private def objectMapper = Jackson2ObjectMapperBuilder.json().build()
+    private def codec = new JacksonMessageCodec(objectMapper, new MessageTypeRegistry(objectMapper, [AddTip]))
+
+    def "Read events stored in many segments after the store is opened again"() {
+        given:
+        def eventStore = new MappedFileEventStore(directory, codec, 1024, false)
+        (1..20).each { eventStore.store(tip("order-1", it), it - 1) }
+        (1..5).each { eventStore.store(tip("order-2", it)) }
+
+        when:
+        eventStore.store(tip("order-1", 21), 5)
+
+        then:
+        thrown(EventVersionConflictException)
+
+        when:
+        eventStore.close()
+        def reopened = new MappedFileEventStore(directory, codec, 1024, false)
+
+        then:
+        reopened.getEventStream("order-1").version() == 20
+        reopened.getEventsForOrder("order-1") == (1..20).collect { tip("order-1", it) }
+        reopened.getEventsForOrder("order-2").size() == 5
+    }
+
+    def "Store events from many threads at once"() {
+        given:
+        def eventStore = new MappedFileEventStore(directory, codec, 4096, false)
+        def executor = Executors.newFixedThreadPool(8)
+
+        when:
+        (1..8).each { thread ->
+            executor.submit { (1..50).each { eventStore.store(tip("order-${it % 5}", thread * 100 + it)) } }
+        }
+        executor.shutdown()
+        executor.awaitTermination(10, TimeUnit.SECONDS)
+
+        then:
+        (0..4).sum { eventStore.getEventStream("order-$it").version() } == 400
+    }
+
+    private static Message tip(String orderId, int value) {
+        def header = new Header("$orderId-$value", "orders", "AddTip", orderId, Instant.ofEpochSecond(value))
+        new Message(header, new AddTip(orderId, new BigDecimal(value)))
+    }
+}
@@ -0,0 +1,62 @@
+package io.wkrzywiec.fooddelivery.commons.repository
+
+import io.wkrzywiec.fooddelivery.commons.incoming.AddTip
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.JacksonMessageCodec
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageTypeRegistry
+import io.wkrzywiec.fooddelivery.commons.infra.repository.SegmentArchive
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Instant
+
+@Subject(SegmentArchive)
+class SegmentArchiveSpec extends Specification {
+
+    @TempDir
+    private Path directory
+
+    private def objectMapper = Jackson2ObjectMapperBuilder.json().build()
+    private def codec = new JacksonMessageCodec(objectMapper, new MessageTypeRegistry(objectMapper, [AddTip]))
+
+    def "Find an aggregate archived among many others"() {
+        given:
+        def archive = new SegmentArchive(directory, codec, 16)
+        archive.append((1..100).collectEntries { ["order-$it".toString(), tips("order-$it", 3)] })
+        archive.append((101..200).collectEntries { ["order-$it".toString(), tips("order-$it", 2)] })
+
+        expect:
+        archive.find("order-42").get() == tips("order-42", 3)
+        archive.find("order-142").get() == tips("order-142", 2)
+        archive.find("order-999").isEmpty()
+
+        and: "Segments are loaded when the archive is opened again"
+        new SegmentArchive(directory, codec, 16).find("order-77").get() == tips("order-77", 3)
+    }
+
+    def "Write a new segment after leftovers of an interrupted write"() {
+        given:
+        def archive = new SegmentArchive(directory, codec)
+        Files.write(directory.resolve("0000000005.segment.tmp"), [1, 2, 3] as byte[])
+
+        when:
+        archive.append(["order-1": tips("order-1", 1)])
+
+        then:
+        Files.exists(directory.resolve("0000000006.segment"))
+        Files.exists(directory.resolve("0000000006.index"))
+        archive.find("order-1").get() == tips("order-1", 1)
+    }
+
+    private static List<Message> tips(String orderId, int count) {
+        (1..count).collect {
+            def header = new Header("$orderId-$it", "orders", "AddTip", orderId, Instant.ofEpochSecond(it))
+            new Message(header, new AddTip(orderId, new BigDecimal(it)))
+        }
+    }
+}
@@ -75,6 +75,16 @@ class Delivery {
     public static Delivery from(List<Message> events) {
         Delivery delivery = null;
         for (Message event: events) {
+            if (event.body() instanceof DeliverySnapshot snapshot) {
+                delivery = new Delivery(
+                        snapshot.orderId(), snapshot.customerId(),
+                        snapshot.restaurantId(), snapshot.deliveryManId(),
+                        snapshot.status(), snapshot.address(),
+                        mapItems(snapshot.items()), snapshot.deliveryCharge(),
+                        snapshot.tip(), snapshot.total(), new HashMap<>(snapshot.metadata())
+                );
+            }
+
             if (event.body() instanceof DeliveryCreated created) {
                 Map<String, String> metadata = new HashMap<>();
                 metadata.put("creationTimestamp", event.header().createdAt().toString());
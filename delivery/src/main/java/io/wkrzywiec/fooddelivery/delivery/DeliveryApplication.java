@@ -1,5 +1,6 @@
 package io.wkrzywiec.fooddelivery.delivery;
 
+import io.wkrzywiec.fooddelivery.commons.infra.IdGenerator;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
@@ -20,4 +21,9 @@ public class DeliveryApplication {
 	public Clock clock() {
 		return Clock.systemUTC();
 	}
+
+	@Bean
+	public IdGenerator idGenerator(Clock clock) {
+		return IdGenerator.timeOrdered(clock);
+	}
 }
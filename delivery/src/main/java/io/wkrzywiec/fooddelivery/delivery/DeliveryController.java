@@ -0,0 +1,29 @@
+package io.wkrzywiec.fooddelivery.delivery;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Clock;
+import java.time.Instant;
+
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+class DeliveryController {
+
+    private final DeliveryFacade facade;
+    private final Clock clock;
+
+    @GetMapping("/deliveries/{orderId}")
+    ResponseEntity<DeliverySnapshot> getDelivery(@PathVariable String orderId, @RequestParam(required = false) Instant asOf) {
+        log.info("Received request to get a delivery of an '{}' order as of {}", orderId, asOf);
+        return facade.findDelivery(orderId, asOf == null ? clock.instant() : asOf)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
@@ -4,7 +4,9 @@ import io.vavr.CheckedRunnable;
 import io.vavr.control.Try;
 import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
 import io.wkrzywiec.fooddelivery.commons.incoming.*;
+import io.wkrzywiec.fooddelivery.commons.infra.IdGenerator;
 import io.wkrzywiec.fooddelivery.commons.infra.repository.EventStore;
+import io.wkrzywiec.fooddelivery.commons.infra.repository.EventStream;
 import io.wkrzywiec.fooddelivery.delivery.incoming.*;
 import io.wkrzywiec.fooddelivery.delivery.outgoing.*;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header;
@@ -15,8 +17,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.time.Clock;
-import java.util.UUID;
+import java.time.Instant;
+import java.util.Optional;
 
+import static io.wkrzywiec.fooddelivery.commons.infra.repository.EventVersionConflictException.retryOnConflict;
 import static java.lang.String.format;
 
 @RequiredArgsConstructor
@@ -28,6 +32,18 @@ public class DeliveryFacade {
     private final EventStore eventStore;
     private final MessagePublisher publisher;
     private final Clock clock;
+    private final IdGenerator idGenerator;
+
+    /**
+     * Rebuilds an aggregate from events created up to a given time, without changing it.
+     */
+    Optional<DeliverySnapshot> findDelivery(String orderId, Instant asOf) {
+        var events = eventStore.getEventsForOrder(orderId, asOf);
+        if (events.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(DeliverySnapshot.from(Delivery.from(events)));
+    }
 
     public void handle(OrderCreated orderCreated) {
         log.info("Preparing a delivery for an '{}' order.", orderCreated.orderId());
@@ -47,139 +63,169 @@ public class DeliveryFacade {
                 deliveryCreated
         );
 
-        eventStore.store(event);
-        publisher.send(event);
+        eventStore.storeAndPublish(event, publisher);
         log.info("New delivery with an orderId: '{}' was created", newDelivery.getOrderId());
     }
 
     public void handle(TipAddedToOrder tipAddedToOrder) {
         log.info("Starting adding top for '{}' delivery", tipAddedToOrder.orderId());
 
-        var delivery = findDelivery(tipAddedToOrder.orderId());
-
-        process(
-                delivery,
-                () -> delivery.addTip(tipAddedToOrder.tip(), tipAddedToOrder.total()),
-                new TipAddedToDelivery(delivery.getOrderId(), tipAddedToOrder.tip(), tipAddedToOrder.total()),
-                "Failed to add tip."
-        );
+        retryOnConflict(() -> {
+            var eventStream = findDeliveryEvents(tipAddedToOrder.orderId());
+            var delivery = Delivery.from(eventStream.events());
+
+            process(
+                    delivery,
+                    eventStream.version(),
+                    () -> delivery.addTip(tipAddedToOrder.tip(), tipAddedToOrder.total()),
+                    new TipAddedToDelivery(delivery.getOrderId(), tipAddedToOrder.tip(), tipAddedToOrder.total()),
+                    "Failed to add tip."
+            );
+        });
     }
 
     public void handle(OrderCanceled orderCanceled) {
         log.info("'{}' order was canceled. Canceling delivery", orderCanceled.orderId());
 
-        var storedEvents = eventStore.getEventsForOrder(orderCanceled.orderId());
-        if (storedEvents.size() == 0) {
-            throw new DeliveryException(format("Failed to cancel a delivery. There is no delivery for an %s order", orderCanceled.orderId()));
-        }
-        var delivery = Delivery.from(storedEvents);
-
-        process(
-                delivery,
-                () -> delivery.cancel(orderCanceled.reason(), clock.instant()),
-                new DeliveryCanceled(orderCanceled.orderId(), orderCanceled.reason()),
-                "Failed to cancel an delivery."
-        );
+        retryOnConflict(() -> {
+            var eventStream = eventStore.getEventStream(orderCanceled.orderId());
+            var storedEvents = eventStream.events();
+            if (storedEvents.size() == 0) {
+                throw new DeliveryException(format("Failed to cancel a delivery. There is no delivery for an %s order", orderCanceled.orderId()));
+            }
+            var delivery = Delivery.from(storedEvents);
+
+            process(
+                    delivery,
+                    eventStream.version(),
+                    () -> delivery.cancel(orderCanceled.reason(), clock.instant()),
+                    new DeliveryCanceled(orderCanceled.orderId(), orderCanceled.reason()),
+                    "Failed to cancel an delivery."
+            );
+        });
     }
 
     public void handle(PrepareFood prepareFood) {
         log.info("Starting food preparation for '{}' delivery", prepareFood.orderId());
 
-        var delivery = findDelivery(prepareFood.orderId());
-
-        process(
-                delivery,
-                () -> delivery.foodInPreparation(clock.instant()),
-                new FoodInPreparation(delivery.getOrderId()),
-                "Failed to start food preparation."
-        );
+        retryOnConflict(() -> {
+            var eventStream = findDeliveryEvents(prepareFood.orderId());
+            var delivery = Delivery.from(eventStream.events());
+
+            process(
+                    delivery,
+                    eventStream.version(),
+                    () -> delivery.foodInPreparation(clock.instant()),
+                    new FoodInPreparation(delivery.getOrderId()),
+                    "Failed to start food preparation."
+            );
+        });
     }
 
     public void handle(AssignDeliveryMan assignDeliveryMan) {
         log.info("Assigning a delivery man with id: '{}' to an '{}' order", assignDeliveryMan.deliveryManId(), assignDeliveryMan.orderId());
 
-        var delivery = findDelivery(assignDeliveryMan.orderId());
-
-        process(
-                delivery,
-                () -> delivery.assignDeliveryMan(assignDeliveryMan.deliveryManId()),
-                new DeliveryManAssigned(delivery.getOrderId(), assignDeliveryMan.deliveryManId()),
-                "Failed to assign delivery man."
-        );
+        retryOnConflict(() -> {
+            var eventStream = findDeliveryEvents(assignDeliveryMan.orderId());
+            var delivery = Delivery.from(eventStream.events());
+
+            process(
+                    delivery,
+                    eventStream.version(),
+                    () -> delivery.assignDeliveryMan(assignDeliveryMan.deliveryManId()),
+                    new DeliveryManAssigned(delivery.getOrderId(), assignDeliveryMan.deliveryManId()),
+                    "Failed to assign delivery man."
+            );
+        });
     }
 
     public void handle(UnAssignDeliveryMan unAssignDeliveryMan) {
         log.info("Un assigning a delivery man from a '{}' delivery", unAssignDeliveryMan.orderId());
 
-        var delivery = findDelivery(unAssignDeliveryMan.orderId());
-
-        process(
-                delivery,
-                delivery::unAssignDeliveryMan,
-                new DeliveryManUnAssigned(delivery.getOrderId(), delivery.getDeliveryManId()),
-                "Failed to un assign delivery man."
-        );
+        retryOnConflict(() -> {
+            var eventStream = findDeliveryEvents(unAssignDeliveryMan.orderId());
+            var delivery = Delivery.from(eventStream.events());
+
+            process(
+                    delivery,
+                    eventStream.version(),
+                    delivery::unAssignDeliveryMan,
+                    new DeliveryManUnAssigned(delivery.getOrderId(), delivery.getDeliveryManId()),
+                    "Failed to un assign delivery man."
+            );
+        });
     }
 
 
     public void handle(FoodReady foodReady) {
         log.info("Starting food ready for '{}' delivery", foodReady.orderId());
 
-        var delivery = findDelivery(foodReady.orderId());
-
-        process(
-                delivery,
-                () -> delivery.foodReady(clock.instant()),
-                new FoodIsReady(delivery.getOrderId()),
-                "Failed to set food as ready."
-        );
+        retryOnConflict(() -> {
+            var eventStream = findDeliveryEvents(foodReady.orderId());
+            var delivery = Delivery.from(eventStream.events());
+
+            process(
+                    delivery,
+                    eventStream.version(),
+                    () -> delivery.foodReady(clock.instant()),
+                    new FoodIsReady(delivery.getOrderId()),
+                    "Failed to set food as ready."
+            );
+        });
     }
 
     public void handle(PickUpFood pickUpFood) {
         log.info("Starting picking up food for '{}' delivery", pickUpFood.orderId());
 
-        var delivery = findDelivery(pickUpFood.orderId());
-
-        process(
-                delivery,
-                () -> delivery.pickUpFood(clock.instant()),
-                new FoodWasPickedUp(delivery.getOrderId()),
-                "Failed to set food as picked up."
-        );
+        retryOnConflict(() -> {
+            var eventStream = findDeliveryEvents(pickUpFood.orderId());
+            var delivery = Delivery.from(eventStream.events());
+
+            process(
+                    delivery,
+                    eventStream.version(),
+                    () -> delivery.pickUpFood(clock.instant()),
+                    new FoodWasPickedUp(delivery.getOrderId()),
+                    "Failed to set food as picked up."
+            );
+        });
     }
 
     public void handle(DeliverFood deliverFood) {
         log.info("Starting delivering food for '{}' delivery", deliverFood.orderId());
 
-        var delivery = findDelivery(deliverFood.orderId());
-
-        process(
-                delivery,
-                () -> delivery.deliverFood(clock.instant()),
-                new FoodDelivered(delivery.getOrderId()),
-                "Failed to set food as delivered."
-        );
+        retryOnConflict(() -> {
+            var eventStream = findDeliveryEvents(deliverFood.orderId());
+            var delivery = Delivery.from(eventStream.events());
+
+            process(
+                    delivery,
+                    eventStream.version(),
+                    () -> delivery.deliverFood(clock.instant()),
+                    new FoodDelivered(delivery.getOrderId()),
+                    "Failed to set food as delivered."
+            );
+        });
     }
 
-    private Delivery findDelivery(String orderId) {
-        var storedEvents = eventStore.getEventsForOrder(orderId);
-        if (storedEvents.size() == 0) {
+    private EventStream findDeliveryEvents(String orderId) {
+        var eventStream = eventStore.getEventStream(orderId);
+        if (eventStream.events().size() == 0) {
             throw new DeliveryException(format("There is no delivery with an orderId '%s'.", orderId));
         }
-        return Delivery.from(storedEvents);
+        return eventStream;
     }
 
-    private void process(Delivery delivery, CheckedRunnable runProcess, DomainMessageBody successEvent, String failureMessage) {
+    private void process(Delivery delivery, long expectedVersion, CheckedRunnable runProcess, DomainMessageBody successEvent, String failureMessage) {
         Try.run(runProcess)
-                .onSuccess(v -> publishSuccessEvent(delivery.getOrderId(), successEvent))
+                .onSuccess(v -> publishSuccessEvent(delivery.getOrderId(), expectedVersion, successEvent))
                 .onFailure(ex -> publishingFailureEvent(delivery.getOrderId(), failureMessage, ex));
     };
 
-    private void publishSuccessEvent(String orderId, DomainMessageBody eventObject) {
+    private void publishSuccessEvent(String orderId, long expectedVersion, DomainMessageBody eventObject) {
         log.info("Publishing success event: {}", eventObject);
         Message event = resultingEvent(orderId, eventObject);
-        eventStore.store(event);
-        publisher.send(event);
+        eventStore.storeAndPublish(event, expectedVersion, publisher);
     }
 
     private void publishingFailureEvent(String id, String message, Throwable ex) {
@@ -193,6 +239,6 @@ public class DeliveryFacade {
     }
 
     private Header eventHeader(String orderId, String type) {
-        return new Header(UUID.randomUUID().toString(), ORDERS_CHANNEL, type, orderId, clock.instant());
+        return new Header(idGenerator.nextId(), ORDERS_CHANNEL, type, orderId, clock.instant());
     }
 }
@@ -0,0 +1,28 @@
+package io.wkrzywiec.fooddelivery.delivery;
+
+import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+import io.wkrzywiec.fooddelivery.commons.incoming.*;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageTypes;
+import io.wkrzywiec.fooddelivery.delivery.incoming.OrderCanceled;
+import io.wkrzywiec.fooddelivery.delivery.incoming.OrderCreated;
+import io.wkrzywiec.fooddelivery.delivery.incoming.TipAddedToOrder;
+import io.wkrzywiec.fooddelivery.delivery.outgoing.*;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+
+@Component
+class DeliveryMessageTypes implements MessageTypes {
+
+    @Override
+    public Collection<Class<? extends DomainMessageBody>> messageTypes() {
+        return List.of(
+                OrderCreated.class, TipAddedToOrder.class, OrderCanceled.class,
+                PrepareFood.class, AssignDeliveryMan.class, UnAssignDeliveryMan.class,
+                FoodReady.class, PickUpFood.class, DeliverFood.class,
+                DeliveryCreated.class, TipAddedToDelivery.class, DeliveryCanceled.class,
+                FoodInPreparation.class, DeliveryManAssigned.class, DeliveryManUnAssigned.class,
+                FoodIsReady.class, FoodWasPickedUp.class, FoodDelivered.class, DeliverySnapshot.class);
+    }
+}
@@ -0,0 +1,33 @@
+package io.wkrzywiec.fooddelivery.delivery;
+
+import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+import io.wkrzywiec.fooddelivery.delivery.incoming.Item;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+record DeliverySnapshot(
+        String orderId,
+        String customerId,
+        String restaurantId,
+        String deliveryManId,
+        DeliveryStatus status,
+        String address,
+        List<Item> items,
+        BigDecimal deliveryCharge,
+        BigDecimal tip,
+        BigDecimal total,
+        Map<String, String> metadata) implements DomainMessageBody {
+
+    static DeliverySnapshot from(Delivery delivery) {
+        return new DeliverySnapshot(
+                delivery.getOrderId(), delivery.getCustomerId(),
+                delivery.getRestaurantId(), delivery.getDeliveryManId(),
+                delivery.getStatus(), delivery.getAddress(),
+                delivery.getItems().stream().map(i -> new Item(i.getName(), i.getAmount(), i.getPricePerItem())).toList(),
+                delivery.getDeliveryCharge(), delivery.getTip(),
+                delivery.getTotal(), delivery.getMetadata()
+        );
+    }
+}
@@ -0,0 +1,22 @@
+package io.wkrzywiec.fooddelivery.delivery;
+
+import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+import io.wkrzywiec.fooddelivery.commons.infra.repository.SnapshotSerializer;
+import io.wkrzywiec.fooddelivery.delivery.outgoing.DeliveryCanceled;
+import io.wkrzywiec.fooddelivery.delivery.outgoing.FoodDelivered;
+
+import java.util.List;
+
+class DeliverySnapshotSerializer implements SnapshotSerializer {
+
+    @Override
+    public DomainMessageBody serialize(List<Message> events) {
+        return DeliverySnapshot.from(Delivery.from(events));
+    }
+
+    @Override
+    public boolean isTerminal(Message event) {
+        return event.body() instanceof FoodDelivered || event.body() instanceof DeliveryCanceled;
+    }
+}
@@ -1,13 +1,13 @@
 package io.wkrzywiec.fooddelivery.delivery;
 
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
 import io.wkrzywiec.fooddelivery.commons.infra.repository.RedisEventStore;
-import io.wkrzywiec.fooddelivery.delivery.outgoing.*;
+import io.wkrzywiec.fooddelivery.commons.infra.repository.SegmentArchive;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 @Slf4j
@@ -15,31 +15,12 @@ import org.springframework.stereotype.Component;
 @Component
 class RedisDeliveryEventStore extends RedisEventStore {
 
-    public RedisDeliveryEventStore(RedisTemplate<String, String> redisTemplate, ObjectMapper objectMapper) {
-        super(redisTemplate, objectMapper);
+    public RedisDeliveryEventStore(RedisTemplate<String, String> redisTemplate, MessageCodec messageCodec, @Nullable SegmentArchive archive) {
+        super(redisTemplate, messageCodec, new DeliverySnapshotSerializer(), archive);
     }
 
     @Override
     public String streamPrefix() {
         return "delivery::";
     }
-
-    @Override
-    public Class<? extends DomainMessageBody> getClassType(String type) {
-        return switch (type) {
-            case "DeliveryCreated" -> DeliveryCreated.class;
-            case "TipAddedToDelivery" -> TipAddedToDelivery.class;
-            case "DeliveryCanceled" -> DeliveryCanceled.class;
-            case "FoodInPreparation" -> FoodInPreparation.class;
-            case "DeliveryManAssigned" -> DeliveryManAssigned.class;
-            case "DeliveryManUnAssigned" -> DeliveryManUnAssigned.class;
-            case "FoodIsReady" -> FoodIsReady.class;
-            case "FoodWasPickedUp" -> FoodWasPickedUp.class;
-            case "FoodDelivered" -> FoodDelivered.class;
-            default -> {
-                log.error("There is not logic for mapping {} event from a store", type);
-                yield null;
-            }
-        };
-    }
 }
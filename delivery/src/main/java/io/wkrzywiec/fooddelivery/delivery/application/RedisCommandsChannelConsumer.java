@@ -0,0 +1,74 @@
+package io.wkrzywiec.fooddelivery.delivery.application;
+
+import io.wkrzywiec.fooddelivery.commons.incoming.*;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.ConsumerName;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisBatchStreamListener;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisStreamListener;
+import io.wkrzywiec.fooddelivery.delivery.DeliveryFacade;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+
+@Slf4j
+@Component
+@Profile("redis")
+@RequiredArgsConstructor
+public class RedisCommandsChannelConsumer implements RedisBatchStreamListener {
+
+    private static final Set<String> MESSAGE_TYPES = RedisStreamListener.typeNames(List.of(
+            PrepareFood.class, AssignDeliveryMan.class, UnAssignDeliveryMan.class, FoodReady.class, PickUpFood.class, DeliverFood.class));
+
+    private final DeliveryFacade facade;
+    private final MessageCodec codec;
+
+    @Override
+    public String streamName() {
+        return "delivery.commands";
+    }
+
+    @Override
+    public String group() {
+        return "delivery";
+    }
+
+    @Override
+    public String consumer() {
+        return ConsumerName.ofThisInstance();
+    }
+
+    @Override
+    public Set<String> messageTypes() {
+        return MESSAGE_TYPES;
+    }
+
+    @Override
+    public void onMessage(MapRecord<String, String, byte[]> message) {
+        log.info("Message received from {} stream, record id: {}", streamName(), message.getId());
+
+        var payloadMessage = message.getValue().get("payload");
+        var domainMessage = codec.decodeMessage(payloadMessage);
+        var body = domainMessage.body();
+
+        if (body instanceof PrepareFood prepareFood) {
+            facade.handle(prepareFood);
+        } else if (body instanceof AssignDeliveryMan assignDeliveryMan) {
+            facade.handle(assignDeliveryMan);
+        } else if (body instanceof UnAssignDeliveryMan unAssignDeliveryMan) {
+            facade.handle(unAssignDeliveryMan);
+        } else if (body instanceof FoodReady foodReady) {
+            facade.handle(foodReady);
+        } else if (body instanceof PickUpFood pickUpFood) {
+            facade.handle(pickUpFood);
+        } else if (body instanceof DeliverFood deliverFood) {
+            facade.handle(deliverFood);
+        } else {
+            log.info("There is not logic for handling {} message", domainMessage.header().type());
+        }
+    }
+}
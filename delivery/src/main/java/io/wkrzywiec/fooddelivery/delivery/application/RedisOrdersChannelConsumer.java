@@ -1,10 +1,8 @@
 package io.wkrzywiec.fooddelivery.delivery.application;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.wkrzywiec.fooddelivery.commons.incoming.*;
-import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.ConsumerName;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisBatchStreamListener;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisStreamListener;
 import io.wkrzywiec.fooddelivery.delivery.DeliveryFacade;
 import io.wkrzywiec.fooddelivery.delivery.incoming.*;
@@ -14,14 +12,20 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.connection.stream.MapRecord;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.Set;
+
 @Slf4j
 @Component
 @Profile("redis")
 @RequiredArgsConstructor
-public class RedisOrdersChannelConsumer implements RedisStreamListener {
+public class RedisOrdersChannelConsumer implements RedisBatchStreamListener {
+
+    private static final Set<String> MESSAGE_TYPES = RedisStreamListener.typeNames(List.of(
+            OrderCreated.class, TipAddedToOrder.class, OrderCanceled.class));
 
     private final DeliveryFacade facade;
-    private final ObjectMapper objectMapper;
+    private final MessageCodec codec;
 
     @Override
     public String streamName() {
@@ -35,41 +39,30 @@ public class RedisOrdersChannelConsumer implements RedisStreamListener {
 
     @Override
     public String consumer() {
-        return "1";
+        return ConsumerName.ofThisInstance();
     }
 
     @Override
-    public void onMessage(MapRecord<String, String, String> message) {
-        log.info("Message received from {} stream: {}", streamName(), message);
+    public Set<String> messageTypes() {
+        return MESSAGE_TYPES;
+    }
 
-        var payloadMessage = message.getValue().get("payload");
+    @Override
+    public void onMessage(MapRecord<String, String, byte[]> message) {
+        log.info("Message received from {} stream, record id: {}", streamName(), message.getId());
 
-        try {
-            var messageAsJson = objectMapper.readTree(payloadMessage);
-            Header header = map(messageAsJson.get("header"), Header.class);
+        var payloadMessage = message.getValue().get("payload");
+        var domainMessage = codec.decodeMessage(payloadMessage);
+        var body = domainMessage.body();
 
-            switch (header.type()) {
-                case "OrderCreated" -> facade.handle(mapMessageBody(messageAsJson, OrderCreated.class));
-                case "TipAddedToOrder" -> facade.handle(mapMessageBody(messageAsJson, TipAddedToOrder.class));
-                case "OrderCanceled" -> facade.handle(mapMessageBody(messageAsJson, OrderCanceled.class));
-                case "PrepareFood" -> facade.handle(mapMessageBody(messageAsJson, PrepareFood.class));
-                case "AssignDeliveryMan" -> facade.handle(mapMessageBody(messageAsJson, AssignDeliveryMan.class));
-                case "UnAssignDeliveryMan" -> facade.handle(mapMessageBody(messageAsJson, UnAssignDeliveryMan.class));
-                case "FoodReady" -> facade.handle(mapMessageBody(messageAsJson, FoodReady.class));
-                case "PickUpFood" -> facade.handle(mapMessageBody(messageAsJson, PickUpFood.class));
-                case "DeliverFood" -> facade.handle(mapMessageBody(messageAsJson, DeliverFood.class));
-                default -> log.info("There is not logic for handling {} message", header.type());
-            }
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
+        if (body instanceof OrderCreated orderCreated) {
+            facade.handle(orderCreated);
+        } else if (body instanceof TipAddedToOrder tipAddedToOrder) {
+            facade.handle(tipAddedToOrder);
+        } else if (body instanceof OrderCanceled orderCanceled) {
+            facade.handle(orderCanceled);
+        } else {
+            log.info("There is not logic for handling {} message", domainMessage.header().type());
         }
     }
-
-    private <T> T mapMessageBody(JsonNode fullMessage, Class<T> valueType) throws JsonProcessingException {
-        return objectMapper.treeToValue(fullMessage.get("body"), valueType);
-    }
-
-    private <T> T map(JsonNode fullMessage, Class<T> valueType) throws JsonProcessingException {
-        return objectMapper.treeToValue(fullMessage, valueType);
-    }
 }
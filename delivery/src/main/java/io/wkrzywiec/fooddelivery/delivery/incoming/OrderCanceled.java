@@ -1,4 +1,6 @@
 package io.wkrzywiec.fooddelivery.delivery.incoming;
 
-public record OrderCanceled(String orderId, String reason) {
+import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+
+public record OrderCanceled(String orderId, String reason) implements DomainMessageBody {
 }
@@ -2,6 +2,7 @@ package io.wkrzywiec.fooddelivery.delivery
 
 
 import io.wkrzywiec.fooddelivery.commons.incoming.AssignDeliveryMan
+import io.wkrzywiec.fooddelivery.commons.infra.IdGenerator
 import io.wkrzywiec.fooddelivery.commons.infra.repository.InMemoryEventStore
 import io.wkrzywiec.fooddelivery.delivery.incoming.Item
 import io.wkrzywiec.fooddelivery.commons.incoming.DeliverFood
@@ -51,7 +52,7 @@ class DeliveryFacadeSpec extends Specification {
     def setup() {
         eventStore = new InMemoryEventStore()
         publisher = new FakeMessagePublisher()
-        facade = new DeliveryFacade(eventStore, publisher, testClock)
+        facade = new DeliveryFacade(eventStore, publisher, testClock, IdGenerator.timeOrdered(testClock))
     }
 
     def "Create a delivery"() {
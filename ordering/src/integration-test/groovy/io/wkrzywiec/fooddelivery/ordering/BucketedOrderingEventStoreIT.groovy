@@ -0,0 +1,135 @@
+package io.wkrzywiec.fooddelivery.ordering
+
+import io.wkrzywiec.fooddelivery.commons.IntegrationTest
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec
+import io.wkrzywiec.fooddelivery.commons.infra.repository.BucketedRedisEventStore
+import io.wkrzywiec.fooddelivery.commons.infra.repository.EventArchiver
+import io.wkrzywiec.fooddelivery.commons.infra.repository.EventVersionConflictException
+import io.wkrzywiec.fooddelivery.commons.infra.repository.SegmentArchive
+import io.wkrzywiec.fooddelivery.ordering.outgoing.OrderCompleted
+import io.wkrzywiec.fooddelivery.ordering.outgoing.OrderCreated
+import io.wkrzywiec.fooddelivery.ordering.outgoing.OrderInProgress
+import io.wkrzywiec.fooddelivery.ordering.outgoing.TipAddedToOrder
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.data.redis.core.RedisTemplate
+import org.springframework.test.context.ActiveProfiles
+import spock.lang.Subject
+import spock.lang.TempDir
+
+import java.nio.file.Path
+import java.time.Clock
+
+import static io.wkrzywiec.fooddelivery.commons.infra.messaging.Message.message
+import static io.wkrzywiec.fooddelivery.ordering.OrderTestData.anOrder
+
+@Subject(BucketedRedisEventStore)
+@ActiveProfiles("redis")
+class BucketedOrderingEventStoreIT extends IntegrationTest {
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate
+
+    @Autowired
+    private MessageCodec codec
+
+    @Autowired
+    private RedisOrderingEventStore streamEventStore
+
+    @TempDir
+    private Path directory
+
+    private BucketedRedisEventStore eventStore
+
+    def setup() {
+        eventStore = new BucketedRedisEventStore(redisTemplate, codec, "ordering::", 16, streamEventStore)
+    }
+
+    def "Store events of an order in a bucket"() {
+        given:
+        def order = anOrder()
+        eventStore.store(message("orders", Clock.systemUTC(), order.orderCreated()))
+        eventStore.store(message("orders", Clock.systemUTC(), new OrderInProgress(order.id)), 1)
+
+        when:
+        eventStore.store(message("orders", Clock.systemUTC(), new TipAddedToOrder(order.id, new BigDecimal(5), null)), 1)
+
+        then:
+        thrown(EventVersionConflictException)
+
+        and:
+        def eventStream = eventStore.getEventStream(order.id)
+        eventStream.version() == 2
+        Order.from(eventStream.events()).status == OrderStatus.IN_PROGRESS
+
+        and: "No stream was created for the order"
+        !redisTemplate.hasKey("ordering::" + order.id)
+    }
+
+    def "Move an order from its stream to a bucket on first read"() {
+        given:
+        def order = anOrder()
+        streamEventStore.store(message("orders", Clock.systemUTC(), order.orderCreated()))
+        streamEventStore.store(message("orders", Clock.systemUTC(), new TipAddedToOrder(order.id, new BigDecimal(5), null)))
+
+        when:
+        def eventStream = eventStore.getEventStream(order.id)
+
+        then:
+        eventStream.version() == 2
+        Order.from(eventStream.events()).tip == new BigDecimal(5)
+
+        and: "New events are appended after the moved ones"
+        eventStore.store(message("orders", Clock.systemUTC(), new OrderInProgress(order.id)), 2)
+        eventStore.getEventStream(order.id).version() == 3
+
+        and: "Stream of the order is gone"
+        !redisTemplate.hasKey("ordering::" + order.id)
+    }
+
+    def "Move all events of a completed order that has a snapshot"() {
+        given:
+        def order = anOrder()
+        streamEventStore.store(message("orders", Clock.systemUTC(), order.orderCreated()))
+        streamEventStore.store(message("orders", Clock.systemUTC(), new TipAddedToOrder(order.id, new BigDecimal(5), null)))
+        streamEventStore.store(message("orders", Clock.systemUTC(), new OrderCompleted(order.id)))
+
+        and: "A snapshot was taken on the terminal event"
+        redisTemplate.hasKey("snapshot::ordering::" + order.id)
+
+        when:
+        def migrated = eventStore.migrate(order.id)
+
+        then:
+        migrated
+        def eventStream = eventStore.getEventStream(order.id)
+        eventStream.version() == 3
+        eventStream.events()*.body()*.getClass() == [OrderCreated, TipAddedToOrder, OrderCompleted]
+
+        and:
+        !redisTemplate.hasKey("ordering::" + order.id)
+        !redisTemplate.hasKey("snapshot::ordering::" + order.id)
+    }
+
+    def "Move an order that got a tip after it was archived"() {
+        given:
+        def archive = new SegmentArchive(directory, codec)
+        def archivingEventStore = new RedisOrderingEventStore(redisTemplate, codec, archive)
+        def bucketedEventStore = new BucketedRedisEventStore(redisTemplate, codec, "ordering::", 16, archivingEventStore)
+
+        and: "A completed order was archived and got a tip afterwards"
+        def order = anOrder()
+        archivingEventStore.store(message("orders", Clock.systemUTC(), order.orderCreated()))
+        archivingEventStore.store(message("orders", Clock.systemUTC(), new OrderCompleted(order.id)))
+        new EventArchiver(archivingEventStore, new OrderSnapshotSerializer(), archive, 10).archiveTerminalAggregates()
+        archivingEventStore.store(message("orders", Clock.systemUTC(), new TipAddedToOrder(order.id, BigDecimal.TEN, BigDecimal.TEN)), 2)
+
+        when:
+        def eventStream = bucketedEventStore.getEventStream(order.id)
+
+        then:
+        eventStream.version() == 3
+        eventStream.events()*.body()*.getClass() == [OrderCreated, OrderCompleted, TipAddedToOrder]
+        !redisTemplate.hasKey("ordering::" + order.id)
+        !redisTemplate.hasKey("archived::ordering::" + order.id)
+    }
+}
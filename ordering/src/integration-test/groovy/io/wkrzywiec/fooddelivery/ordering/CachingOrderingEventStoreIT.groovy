@@ -0,0 +1,63 @@
+package io.wkrzywiec.fooddelivery.ordering
+
+import io.micrometer.core.instrument.MeterRegistry
+import io.wkrzywiec.fooddelivery.commons.IntegrationTest
+import io.wkrzywiec.fooddelivery.commons.infra.repository.CachingEventStore
+import io.wkrzywiec.fooddelivery.ordering.outgoing.OrderInProgress
+import io.wkrzywiec.fooddelivery.ordering.outgoing.TipAddedToOrder
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.test.context.ActiveProfiles
+import spock.lang.Subject
+
+import java.time.Clock
+
+import static io.wkrzywiec.fooddelivery.commons.infra.messaging.Message.message
+import static io.wkrzywiec.fooddelivery.ordering.OrderTestData.anOrder
+
+@Subject(CachingEventStore)
+@ActiveProfiles("redis")
+class CachingOrderingEventStoreIT extends IntegrationTest {
+
+    @Autowired
+    private CachingEventStore eventStore
+
+    @Autowired
+    private MeterRegistry meterRegistry
+
+    def "Apply events stored after an order was cached"() {
+        given:
+        def order = anOrder()
+        eventStore.store(message("orders", Clock.systemUTC(), order.orderCreated()))
+
+        and: "Order is cached"
+        Order.from(eventStore.getEventsForOrder(order.id)).status == OrderStatus.CREATED
+
+        and:
+        eventStore.store(message("orders", Clock.systemUTC(), new OrderInProgress(order.id)))
+        eventStore.store(message("orders", Clock.systemUTC(), new TipAddedToOrder(order.id, new BigDecimal(5), null)))
+
+        when:
+        def storedEvents = eventStore.getEventsForOrder(order.id)
+
+        then: "Cached order is returned as a single snapshot with new events applied"
+        storedEvents.size() == 1
+        storedEvents[0].body() instanceof OrderSnapshot
+        def cachedOrder = Order.from(storedEvents)
+        cachedOrder.status == OrderStatus.IN_PROGRESS
+        cachedOrder.tip == new BigDecimal(5)
+    }
+
+    def "Expose cache metrics"() {
+        given:
+        def order = anOrder()
+        eventStore.store(message("orders", Clock.systemUTC(), order.orderCreated()))
+
+        when:
+        eventStore.getEventsForOrder(order.id)
+        eventStore.getEventsForOrder(order.id)
+
+        then:
+        meterRegistry.get("cache.size").tag("cache", "ordering-aggregates").gauge().value() > 0
+        meterRegistry.get("cache.hit.ratio").tag("cache", "ordering-aggregates").gauge().value() > 0
+    }
+}
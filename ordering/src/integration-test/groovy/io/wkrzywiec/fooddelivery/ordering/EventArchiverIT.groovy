@@ -0,0 +1,93 @@
+package io.wkrzywiec.fooddelivery.ordering
+
+import io.wkrzywiec.fooddelivery.commons.IntegrationTest
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec
+import io.wkrzywiec.fooddelivery.commons.infra.repository.EventArchiver
+import io.wkrzywiec.fooddelivery.commons.infra.repository.SegmentArchive
+import io.wkrzywiec.fooddelivery.commons.infra.repository.EventVersionConflictException
+import io.wkrzywiec.fooddelivery.ordering.outgoing.OrderCompleted
+import io.wkrzywiec.fooddelivery.ordering.outgoing.OrderCreated
+import io.wkrzywiec.fooddelivery.ordering.outgoing.TipAddedToOrder
+import io.wkrzywiec.fooddelivery.ordering.outgoing.OrderInProgress
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.data.redis.core.RedisTemplate
+import org.springframework.test.context.ActiveProfiles
+import spock.lang.Subject
+import spock.lang.TempDir
+
+import java.nio.file.Path
+import java.time.Clock
+
+import static io.wkrzywiec.fooddelivery.commons.infra.messaging.Message.message
+import static io.wkrzywiec.fooddelivery.ordering.OrderTestData.anOrder
+
+@Subject(EventArchiver)
+@ActiveProfiles("redis")
+class EventArchiverIT extends IntegrationTest {
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate
+
+    @Autowired
+    private MessageCodec codec
+
+    @TempDir
+    private Path directory
+
+    def "Move a completed order to the archive and read it from there"() {
+        given:
+        def archive = new SegmentArchive(directory, codec)
+        def eventStore = new RedisOrderingEventStore(redisTemplate, codec, archive)
+        def archiver = new EventArchiver(eventStore, new OrderSnapshotSerializer(), archive, 10)
+
+        and: "One order is completed, another one is still in progress"
+        def completedOrder = anOrder()
+        eventStore.store(message("orders", Clock.systemUTC(), completedOrder.orderCreated()))
+        eventStore.store(message("orders", Clock.systemUTC(), new OrderCompleted(completedOrder.id)))
+
+        def orderInProgress = anOrder()
+        eventStore.store(message("orders", Clock.systemUTC(), orderInProgress.orderCreated()))
+        eventStore.store(message("orders", Clock.systemUTC(), new OrderInProgress(orderInProgress.id)))
+
+        when:
+        archiver.archiveTerminalAggregates()
+
+        then: "Only the completed order was removed from Redis"
+        !redisTemplate.hasKey("ordering::" + completedOrder.id)
+        redisTemplate.hasKey("ordering::" + orderInProgress.id)
+
+        and: "It's still available from the event store"
+        def eventStream = eventStore.getEventStream(completedOrder.id)
+        eventStream.version() == 2
+        Order.from(eventStream.events()).status == OrderStatus.COMPLETED
+    }
+
+    def "Add a tip to an archived order"() {
+        given:
+        def archive = new SegmentArchive(directory, codec)
+        def eventStore = new RedisOrderingEventStore(redisTemplate, codec, archive)
+        def archiver = new EventArchiver(eventStore, new OrderSnapshotSerializer(), archive, 10)
+
+        and: "A completed order was archived"
+        def order = anOrder()
+        eventStore.store(message("orders", Clock.systemUTC(), order.orderCreated()))
+        eventStore.store(message("orders", Clock.systemUTC(), new OrderCompleted(order.id)))
+        archiver.archiveTerminalAggregates()
+        def archived = eventStore.getEventStream(order.id)
+
+        when: "A tip is added in the version read from the archive"
+        eventStore.store(message("orders", Clock.systemUTC(), new TipAddedToOrder(order.id, BigDecimal.TEN, BigDecimal.TEN)), archived.version())
+
+        then: "It continues the archived history"
+        def eventStream = eventStore.getEventStream(order.id)
+        eventStream.version() == 3
+        eventStream.events()*.body()*.getClass() == [OrderCreated, OrderCompleted, TipAddedToOrder]
+        eventStore.getEventsForOrders([order.id])[order.id].size() == 3
+
+        when: "Another tip is added in a stale version"
+        eventStore.store(message("orders", Clock.systemUTC(), new TipAddedToOrder(order.id, BigDecimal.ONE, BigDecimal.ONE)), archived.version())
+
+        then:
+        thrown(EventVersionConflictException)
+    }
+}
@@ -3,15 +3,22 @@ package io.wkrzywiec.fooddelivery.ordering
 import io.wkrzywiec.fooddelivery.commons.IntegrationTest
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessagePublisher
+import io.wkrzywiec.fooddelivery.commons.infra.repository.EventVersionConflictException
 import io.wkrzywiec.fooddelivery.commons.infra.repository.RedisEventStore
 import io.wkrzywiec.fooddelivery.ordering.outgoing.OrderCompleted
 import io.wkrzywiec.fooddelivery.ordering.outgoing.OrderInProgress
+import io.wkrzywiec.fooddelivery.ordering.outgoing.TipAddedToOrder
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.test.context.ActiveProfiles
 import spock.lang.Subject
 
+import java.time.Clock
 import java.time.Instant
 
+import static io.wkrzywiec.fooddelivery.commons.infra.messaging.Message.message
+import static io.wkrzywiec.fooddelivery.ordering.OrderTestData.anOrder
+
 @Subject(RedisOrderingEventStore)
 @ActiveProfiles("redis")
 class RedisOrderingEventStoreIT extends IntegrationTest {
@@ -19,6 +26,9 @@ class RedisOrderingEventStoreIT extends IntegrationTest {
     @Autowired
     private RedisEventStore eventStore
 
+    @Autowired
+    private MessagePublisher publisher
+
     def "Store an event in event store"() {
         given:
         def eventBody = new OrderInProgress("any-id")
@@ -33,6 +43,40 @@ class RedisOrderingEventStoreIT extends IntegrationTest {
         savedEvents.get("body").get("orderId").asText() == "any-id"
     }
 
+    def "Store an event and publish it on a channel at once"() {
+        given:
+        def eventBody = new OrderInProgress("any-id")
+        def eventHeader = new Header(UUID.randomUUID().toString(), "orders", eventBody.getClass().getSimpleName(), eventBody.orderId(), Instant.now())
+
+        when:
+        eventStore.storeAndPublish(new Message(eventHeader, eventBody), publisher)
+
+        then:
+        def savedEvent = redisStreamsClient.getLatestMessageFromStreamAsJson("ordering::any-id")
+        def publishedEvent = redisStreamsClient.getLatestMessageFromStreamAsJson("orders")
+        savedEvent == publishedEvent
+        publishedEvent.get("header").get("messageId").asText() == eventHeader.messageId()
+    }
+
+    def "Reject an event stored with an outdated version"() {
+        given:
+        def order = anOrder()
+        eventStore.store(message("orders", Clock.systemUTC(), order.orderCreated()))
+        def eventStream = eventStore.getEventStream(order.id)
+
+        and: "Order is changed in the meantime"
+        eventStore.store(message("orders", Clock.systemUTC(), new OrderInProgress(order.id)), eventStream.version())
+
+        when:
+        eventStore.store(message("orders", Clock.systemUTC(), new TipAddedToOrder(order.id, new BigDecimal(5), null)), eventStream.version())
+
+        then:
+        thrown(EventVersionConflictException)
+
+        and:
+        eventStore.getEventStream(order.id).version() == 2
+    }
+
     def "Get all events from event store"() {
         given:
         def orderId = "any-id"
@@ -57,4 +101,103 @@ class RedisOrderingEventStoreIT extends IntegrationTest {
         then:
         storedEvents.size() == 2
     }
+
+    def "Get events of many orders at once"() {
+        given:
+        def completedOrder = anOrder()
+        eventStore.store(message("orders", Clock.systemUTC(), completedOrder.orderCreated()))
+        eventStore.store(message("orders", Clock.systemUTC(), new OrderCompleted(completedOrder.id)))
+
+        def orderInProgress = anOrder()
+        eventStore.store(message("orders", Clock.systemUTC(), orderInProgress.orderCreated()))
+        eventStore.store(message("orders", Clock.systemUTC(), new OrderInProgress(orderInProgress.id)))
+
+        when:
+        def storedEvents = eventStore.getEventsForOrders([completedOrder.id, orderInProgress.id, "unknown-id"])
+
+        then:
+        storedEvents.keySet() as List == [completedOrder.id, orderInProgress.id, "unknown-id"]
+        Order.from(storedEvents[completedOrder.id]).status == OrderStatus.COMPLETED
+        storedEvents[orderInProgress.id].size() == 2
+        storedEvents["unknown-id"].isEmpty()
+    }
+
+    def "Take a snapshot of an order when it reaches a terminal state"() {
+        given:
+        def order = anOrder()
+        eventStore.store(message("orders", Clock.systemUTC(), order.orderCreated()))
+        eventStore.store(message("orders", Clock.systemUTC(), new OrderInProgress(order.id)))
+
+        when:
+        eventStore.store(message("orders", Clock.systemUTC(), new OrderCompleted(order.id)))
+
+        then: "Only a snapshot is loaded"
+        def storedEvents = eventStore.getEventsForOrder(order.id)
+        storedEvents.size() == 1
+        storedEvents[0].body() instanceof OrderSnapshot
+        Order.from(storedEvents).status == OrderStatus.COMPLETED
+
+        and: "Stream still holds all events"
+        redisStreamsClient.getAllMessagesInStream("ordering::" + order.id).size() == 3
+    }
+
+    def "Load a snapshot together with events stored after it"() {
+        given: "More events than a snapshot frequency"
+        def order = anOrder()
+        eventStore.store(message("orders", Clock.systemUTC(), order.orderCreated()))
+        (1..10).each { tip ->
+            eventStore.store(message("orders", Clock.systemUTC(), new TipAddedToOrder(order.id, new BigDecimal(tip), null)))
+        }
+
+        and: "Snapshot is taken while reading the order"
+        eventStore.getEventsForOrder(order.id).size() == 11
+
+        and: "Another event is stored"
+        eventStore.store(message("orders", Clock.systemUTC(), new TipAddedToOrder(order.id, new BigDecimal(20), null)))
+
+        when:
+        def storedEvents = eventStore.getEventsForOrder(order.id)
+
+        then:
+        storedEvents.size() == 2
+        storedEvents[0].body() instanceof OrderSnapshot
+        storedEvents[1].body() instanceof TipAddedToOrder
+        Order.from(storedEvents).tip == new BigDecimal(20)
+    }
+
+    def "Get all events from a stream longer than a single read page"() {
+        given:
+        def order = anOrder()
+        redisStreamsClient.publishMessage("ordering::" + order.id, message("orders", Clock.systemUTC(), order.orderCreated()))
+        (1..250).each { tip ->
+            redisStreamsClient.publishMessage("ordering::" + order.id, message("orders", Clock.systemUTC(), new TipAddedToOrder(order.id, new BigDecimal(tip), null)))
+        }
+
+        expect: "All events are streamed lazily"
+        eventStore.streamEventsForOrder(order.id).count() == 251
+
+        and: "All events are fetched"
+        def storedEvents = eventStore.getEventsForOrder(order.id)
+        storedEvents.size() == 251
+        Order.from(storedEvents).tip == new BigDecimal(250)
+    }
+
+    def "Get events of an order as of a given time"() {
+        given:
+        def order = anOrder()
+        eventStore.store(message("orders", Clock.systemUTC(), order.orderCreated()))
+        eventStore.store(message("orders", Clock.systemUTC(), new TipAddedToOrder(order.id, new BigDecimal(5), null)))
+        sleep(10)
+        def asOf = Instant.now()
+        sleep(10)
+        eventStore.store(message("orders", Clock.systemUTC(), new OrderInProgress(order.id)))
+
+        when:
+        def storedEvents = eventStore.getEventsForOrder(order.id, asOf)
+
+        then:
+        storedEvents.size() == 2
+        Order.from(storedEvents).status == OrderStatus.CREATED
+        Order.from(storedEvents).tip == new BigDecimal(5)
+    }
 }
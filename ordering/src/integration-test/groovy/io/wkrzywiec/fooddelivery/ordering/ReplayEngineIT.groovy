@@ -0,0 +1,54 @@
+package io.wkrzywiec.fooddelivery.ordering
+
+import io.wkrzywiec.fooddelivery.commons.IntegrationTest
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message
+import io.wkrzywiec.fooddelivery.commons.infra.repository.ReplayEngine
+import io.wkrzywiec.fooddelivery.ordering.outgoing.TipAddedToOrder
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.data.redis.core.RedisTemplate
+import org.springframework.test.context.ActiveProfiles
+import spock.lang.Subject
+
+import java.time.Clock
+import java.util.concurrent.ConcurrentHashMap
+
+import static io.wkrzywiec.fooddelivery.commons.infra.messaging.Message.message
+import static io.wkrzywiec.fooddelivery.ordering.OrderTestData.anOrder
+
+@Subject(ReplayEngine)
+@ActiveProfiles("redis")
+class ReplayEngineIT extends IntegrationTest {
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate
+
+    @Autowired
+    private RedisOrderingEventStore eventStore
+
+    def "Replay all orders page by page"() {
+        given:
+        def orders = (1..5).collect { anOrder() }
+        orders.each { order ->
+            eventStore.store(message("orders", Clock.systemUTC(), order.orderCreated()))
+            eventStore.store(message("orders", Clock.systemUTC(), new TipAddedToOrder(order.id, new BigDecimal(5), null)))
+        }
+
+        and:
+        def engine = new ReplayEngine(redisTemplate, eventStore, 2, 2, 1, ReplayEngine.NO_RATE_LIMIT)
+        def projection = new ConcurrentHashMap<String, List<Message>>()
+        def pages = []
+        def name = "orders-" + UUID.randomUUID()
+
+        when:
+        def progress = engine.replay(name, { orderId, events -> projection.put(orderId, events) }, { pages << it })
+
+        then:
+        orders.every { Order.from(projection[it.id]).tip == new BigDecimal(5) }
+        progress.finished()
+        progress.aggregates() >= 5
+        pages.size() > 1
+
+        and: "Checkpoint is removed"
+        !redisTemplate.hasKey("replay::" + name)
+    }
+}
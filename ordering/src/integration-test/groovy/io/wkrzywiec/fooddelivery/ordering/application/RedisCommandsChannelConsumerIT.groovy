@@ -15,8 +15,8 @@ import static io.wkrzywiec.fooddelivery.ordering.OrderTestData.anOrder
 import static org.testcontainers.shaded.org.awaitility.Awaitility.await
 
 @ActiveProfiles("redis")
-@Subject(RedisOrdersChannelConsumer)
-class RedisOrdersChannelConsumerIT extends IntegrationTest {
+@Subject(RedisCommandsChannelConsumer)
+class RedisCommandsChannelConsumerIT extends IntegrationTest {
 
     def "Message is consumed correctly"() {
         given:
@@ -29,7 +29,7 @@ class RedisOrdersChannelConsumerIT extends IntegrationTest {
                 .withAddress(faker.address().fullAddress())
 
         def body = order.createOrder()
-        def header = new Header(UUID.randomUUID().toString(), "orders", body.getClass().getSimpleName(), order.id, Instant.now())
+        def header = new Header(UUID.randomUUID().toString(), "ordering.commands", body.getClass().getSimpleName(), order.id, Instant.now())
         def message = new Message(header, body)
 
         when:
@@ -1,6 +1,7 @@
 package io.wkrzywiec.fooddelivery.ordering;
 
 import io.wkrzywiec.fooddelivery.commons.incoming.CreateOrder;
+import io.wkrzywiec.fooddelivery.commons.infra.IdGenerator;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
 import io.wkrzywiec.fooddelivery.ordering.outgoing.*;
 import lombok.EqualsAndHashCode;
@@ -36,11 +37,7 @@ class Order {
     }
 
     private Order(String id, String customerId, String restaurantId, OrderStatus status, String address, List<Item> items, BigDecimal deliveryCharge, BigDecimal tip, Map<String, String> metadata) {
-        if (id == null) {
-            this.id = UUID.randomUUID().toString();
-        } else {
-            this.id = id;
-        }
+        this.id = id;
         this.customerId = customerId;
         this.restaurantId = restaurantId;
         this.status = status;
@@ -52,9 +49,9 @@ class Order {
         this.calculateTotal();
     }
 
-    static Order from(CreateOrder createOrder) {
+    static Order from(CreateOrder createOrder, IdGenerator idGenerator) {
         var order = new Order(
-                createOrder.orderId(),
+                createOrder.orderId() == null ? idGenerator.nextId() : createOrder.orderId(),
                 createOrder.customerId(),
                 createOrder.restaurantId(),
                 mapItems(createOrder.items()),
@@ -75,6 +72,16 @@ class Order {
     static Order from(List<Message> events) {
         Order order = null;
         for (Message event: events) {
+            if (event.body() instanceof OrderSnapshot snapshot) {
+                order = new Order(
+                        snapshot.orderId(), snapshot.customerId(),
+                        snapshot.restaurantId(), snapshot.status(),
+                        snapshot.address(), mapItems(snapshot.items()),
+                        snapshot.deliveryCharge(), snapshot.tip(),
+                        new HashMap<>(snapshot.metadata())
+                );
+            }
+
             if (event.body() instanceof OrderCreated created) {
                 order = new Order(
                         created.orderId(), created.customerId(),
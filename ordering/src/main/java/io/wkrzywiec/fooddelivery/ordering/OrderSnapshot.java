@@ -0,0 +1,31 @@
+package io.wkrzywiec.fooddelivery.ordering;
+
+import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+import io.wkrzywiec.fooddelivery.commons.incoming.Item;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+record OrderSnapshot(
+        String orderId,
+        String customerId,
+        String restaurantId,
+        OrderStatus status,
+        String address,
+        List<Item> items,
+        BigDecimal deliveryCharge,
+        BigDecimal tip,
+        Map<String, String> metadata) implements DomainMessageBody {
+
+    static OrderSnapshot from(Order order) {
+        return new OrderSnapshot(
+                order.getId(), order.getCustomerId(),
+                order.getRestaurantId(), order.getStatus(),
+                order.getAddress(),
+                order.getItems().stream().map(i -> new Item(i.getName(), i.getAmount(), i.getPricePerItem())).toList(),
+                order.getDeliveryCharge(), order.getTip(),
+                order.getMetadata()
+        );
+    }
+}
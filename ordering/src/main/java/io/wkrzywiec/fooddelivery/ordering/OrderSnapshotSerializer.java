@@ -0,0 +1,22 @@
+package io.wkrzywiec.fooddelivery.ordering;
+
+import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
+import io.wkrzywiec.fooddelivery.commons.infra.repository.SnapshotSerializer;
+import io.wkrzywiec.fooddelivery.ordering.outgoing.OrderCanceled;
+import io.wkrzywiec.fooddelivery.ordering.outgoing.OrderCompleted;
+
+import java.util.List;
+
+class OrderSnapshotSerializer implements SnapshotSerializer {
+
+    @Override
+    public DomainMessageBody serialize(List<Message> events) {
+        return OrderSnapshot.from(Order.from(events));
+    }
+
+    @Override
+    public boolean isTerminal(Message event) {
+        return event.body() instanceof OrderCompleted || event.body() instanceof OrderCanceled;
+    }
+}
@@ -5,6 +5,7 @@ import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
 import io.wkrzywiec.fooddelivery.commons.incoming.AddTip;
 import io.wkrzywiec.fooddelivery.commons.incoming.CancelOrder;
 import io.wkrzywiec.fooddelivery.commons.incoming.CreateOrder;
+import io.wkrzywiec.fooddelivery.commons.infra.IdGenerator;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessagePublisher;
@@ -16,8 +17,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.time.Clock;
-import java.util.UUID;
+import java.time.Instant;
+import java.util.Optional;
 
+import static io.wkrzywiec.fooddelivery.commons.infra.repository.EventVersionConflictException.retryOnConflict;
 import static java.lang.String.format;
 
 @RequiredArgsConstructor
@@ -30,10 +33,22 @@ public class OrderingFacade {
     private final EventStore eventStore;
     private final MessagePublisher publisher;
     private final Clock clock;
+    private final IdGenerator idGenerator;
+
+    /**
+     * Rebuilds an aggregate from events created up to a given time, without changing it.
+     */
+    Optional<OrderSnapshot> findOrder(String orderId, Instant asOf) {
+        var events = eventStore.getEventsForOrder(orderId, asOf);
+        if (events.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(OrderSnapshot.from(Order.from(events)));
+    }
 
     public void handle(CreateOrder createOrder) {
         log.info("Creating a new order: {}", createOrder);
-        Order newOrder = Order.from(createOrder);
+        Order newOrder = Order.from(createOrder, idGenerator);
         OrderCreated orderCreated = new OrderCreated(
                 newOrder.getId(),
                 newOrder.getCustomerId(),
@@ -48,76 +63,86 @@ public class OrderingFacade {
                 orderCreated
         );
 
-        eventStore.store(event);
-        publisher.send(event);
+        eventStore.storeAndPublish(event, publisher);
         log.info("New order with an id: '{}' was created", newOrder.getId());
     }
 
     public void handle(CancelOrder cancelOrder) {
         log.info("Cancelling an order: {}", cancelOrder.orderId());
 
-        var storedEvents = eventStore.getEventsForOrder(cancelOrder.orderId());
-        if (storedEvents.size() == 0) {
-            throw new OrderingException(format("Failed to cancel an %s order. There is no such order with provided id.", cancelOrder.orderId()));
-        }
-        var order = Order.from(storedEvents);
-
-        Try.run(() -> order.cancelOrder(cancelOrder.reason()))
-                .onSuccess(v -> publishSuccessEvent(order.getId(), new OrderCanceled(cancelOrder.orderId(), cancelOrder.reason())))
-                .onFailure(ex -> publishingFailureEvent(order.getId(), "Failed to cancel an order.", ex))
-                .andFinally(() -> log.info("Cancellation of an order '{}' has been completed", order.getId()));
+        retryOnConflict(() -> {
+            var eventStream = eventStore.getEventStream(cancelOrder.orderId());
+            var storedEvents = eventStream.events();
+            if (storedEvents.size() == 0) {
+                throw new OrderingException(format("Failed to cancel an %s order. There is no such order with provided id.", cancelOrder.orderId()));
+            }
+            var order = Order.from(storedEvents);
+
+            Try.run(() -> order.cancelOrder(cancelOrder.reason()))
+                    .onSuccess(v -> publishSuccessEvent(order.getId(), eventStream.version(), new OrderCanceled(cancelOrder.orderId(), cancelOrder.reason())))
+                    .onFailure(ex -> publishingFailureEvent(order.getId(), "Failed to cancel an order.", ex))
+                    .andFinally(() -> log.info("Cancellation of an order '{}' has been completed", order.getId()));
+        });
     }
 
     public void handle(FoodInPreparation foodInPreparation) {
         log.info("Setting '{}' order to IN_PROGRESS state", foodInPreparation.orderId());
 
-        var storedEvents = eventStore.getEventsForOrder(foodInPreparation.orderId());
-        if (storedEvents.size() == 0) {
-            throw new OrderingException(format("Failed to set an '%s' order to IN_PROGRESS state. There is no such order with provided id.", foodInPreparation.orderId()));
-        }
-        var order = Order.from(storedEvents);
-
-        Try.run(order::setInProgress)
-                .onSuccess(v -> publishSuccessEvent(order.getId(), new OrderInProgress(foodInPreparation.orderId())))
-                .onFailure(ex -> publishingFailureEvent(order.getId(), "Failed to set an order to IN_PROGRESS state.", ex))
-                .andFinally(() -> log.info("Setting an '{}' order to IN_PROGRESS state has been completed", foodInPreparation.orderId()));
+        retryOnConflict(() -> {
+            var eventStream = eventStore.getEventStream(foodInPreparation.orderId());
+            var storedEvents = eventStream.events();
+            if (storedEvents.size() == 0) {
+                throw new OrderingException(format("Failed to set an '%s' order to IN_PROGRESS state. There is no such order with provided id.", foodInPreparation.orderId()));
+            }
+            var order = Order.from(storedEvents);
+
+            Try.run(order::setInProgress)
+                    .onSuccess(v -> publishSuccessEvent(order.getId(), eventStream.version(), new OrderInProgress(foodInPreparation.orderId())))
+                    .onFailure(ex -> publishingFailureEvent(order.getId(), "Failed to set an order to IN_PROGRESS state.", ex))
+                    .andFinally(() -> log.info("Setting an '{}' order to IN_PROGRESS state has been completed", foodInPreparation.orderId()));
+        });
     }
 
     public void handle(AddTip addTip) {
         log.info("Adding {} tip to '{}' order.", addTip.tip(), addTip.orderId());
 
-        var storedEvents = eventStore.getEventsForOrder(addTip.orderId());
-        if (storedEvents.size() == 0) {
-            throw new OrderingException(format("Failed add tip an '%s' order. There is no such order with provided id.", addTip.orderId()));
-        }
-        var order = Order.from(storedEvents);
-
-        Try.run(() -> order.addTip(addTip.tip()))
-                .onSuccess(v -> publishSuccessEvent(order.getId(), new TipAddedToOrder(order.getId(), order.getTip(), order.getTotal())))
-                .onFailure(ex -> publishingFailureEvent(order.getId(), "Failed to add tip to an order.", ex))
-                .andFinally(() -> log.info("Adding a tip to '{}' order has been completed", addTip.orderId()));
+        retryOnConflict(() -> {
+            var eventStream = eventStore.getEventStream(addTip.orderId());
+            var storedEvents = eventStream.events();
+            if (storedEvents.size() == 0) {
+                throw new OrderingException(format("Failed add tip an '%s' order. There is no such order with provided id.", addTip.orderId()));
+            }
+            var order = Order.from(storedEvents);
+
+            Try.run(() -> order.addTip(addTip.tip()))
+                    .onSuccess(v -> publishSuccessEvent(order.getId(), eventStream.version(), new TipAddedToOrder(order.getId(), order.getTip(), order.getTotal())))
+                    .onFailure(ex -> publishingFailureEvent(order.getId(), "Failed to add tip to an order.", ex))
+                    .andFinally(() -> log.info("Adding a tip to '{}' order has been completed", addTip.orderId()));
+        });
     }
 
     public void handle(FoodDelivered foodDelivered) {
         log.info("Setting '{}' order to COMPLETED state", foodDelivered.orderId());
 
-        var storedEvents = eventStore.getEventsForOrder(foodDelivered.orderId());
-        if (storedEvents.size() == 0) {
-            throw new OrderingException(format("Failed to complete an '%s' order. There is no such order with provided id.", foodDelivered.orderId()));
-        }
-        var order = Order.from(storedEvents);
-
-        Try.run(order::complete)
-                .onSuccess(v -> publishSuccessEvent(order.getId(), new OrderCompleted(foodDelivered.orderId())))
-                .onFailure(ex -> publishingFailureEvent(order.getId(), "Failed to complete an order.", ex))
-                .andFinally(() -> log.info("Setting an '{}' order to COMPLETED state has been completed", foodDelivered.orderId()));
+        retryOnConflict(() -> {
+            var eventStream = eventStore.getEventStream(foodDelivered.orderId());
+            var storedEvents = eventStream.events();
+            if (storedEvents.size() == 0) {
+                throw new OrderingException(format("Failed to complete an '%s' order. There is no such order with provided id.", foodDelivered.orderId()));
+            }
+            var order = Order.from(storedEvents);
+
+            Try.run(order::complete)
+                    .onSuccess(v -> publishSuccessEvent(order.getId(), eventStream.version(), new OrderCompleted(foodDelivered.orderId())))
+                    .onFailure(ex -> publishingFailureEvent(order.getId(), "Failed to complete an order.", ex))
+                    .andFinally(() -> log.info("Setting an '{}' order to COMPLETED state has been completed", foodDelivered.orderId()));
+        });
     }
 
-    private void publishSuccessEvent(String orderId, DomainMessageBody eventObject) {
+    private void publishSuccessEvent(String orderId, long expectedVersion, DomainMessageBody eventObject) {
         log.info("Publishing success event: {}", eventObject);
         Message event = resultingEvent(orderId, eventObject);
-        eventStore.store(event);
-        publisher.send(event);
+        eventStore.storeAndPublish(event, expectedVersion, publisher);
     }
 
     private void publishingFailureEvent(String id, String message, Throwable ex) {
@@ -131,6 +156,6 @@ public class OrderingFacade {
     }
 
     private Header eventHeader(String orderId, String type) {
-        return new Header(UUID.randomUUID().toString(), ORDERS_CHANNEL, type, orderId, clock.instant());
+        return new Header(idGenerator.nextId(), ORDERS_CHANNEL, type, orderId, clock.instant());
     }
 }
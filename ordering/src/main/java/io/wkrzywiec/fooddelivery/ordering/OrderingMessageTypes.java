@@ -0,0 +1,27 @@
+package io.wkrzywiec.fooddelivery.ordering;
+
+import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+import io.wkrzywiec.fooddelivery.commons.incoming.AddTip;
+import io.wkrzywiec.fooddelivery.commons.incoming.CancelOrder;
+import io.wkrzywiec.fooddelivery.commons.incoming.CreateOrder;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageTypes;
+import io.wkrzywiec.fooddelivery.ordering.incoming.FoodDelivered;
+import io.wkrzywiec.fooddelivery.ordering.incoming.FoodInPreparation;
+import io.wkrzywiec.fooddelivery.ordering.outgoing.*;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+
+@Component
+class OrderingMessageTypes implements MessageTypes {
+
+    @Override
+    public Collection<Class<? extends DomainMessageBody>> messageTypes() {
+        return List.of(
+                CreateOrder.class, CancelOrder.class, AddTip.class,
+                FoodInPreparation.class, FoodDelivered.class,
+                OrderCreated.class, OrderCanceled.class, OrderInProgress.class,
+                TipAddedToOrder.class, OrderCompleted.class, OrderSnapshot.class);
+    }
+}
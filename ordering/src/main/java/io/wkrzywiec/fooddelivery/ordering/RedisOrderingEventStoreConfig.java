@@ -0,0 +1,75 @@
+package io.wkrzywiec.fooddelivery.ordering;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import io.wkrzywiec.fooddelivery.commons.infra.repository.BucketedRedisEventStore;
+import io.wkrzywiec.fooddelivery.commons.infra.repository.CachingEventStore;
+import io.wkrzywiec.fooddelivery.commons.infra.repository.EventArchiver;
+import io.wkrzywiec.fooddelivery.commons.infra.repository.MappedFileEventStore;
+import io.wkrzywiec.fooddelivery.commons.infra.repository.SegmentArchive;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.file.Path;
+
+@Configuration
+@Profile("redis")
+class RedisOrderingEventStoreConfig {
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "event-store.layout", havingValue = "stream", matchIfMissing = true)
+    CachingEventStore cachingOrderingEventStore(RedisOrderingEventStore eventStore,
+                                                @Value("${event-store.cache.maximum-size:10000}") long maximumSize,
+                                                MeterRegistry meterRegistry) {
+        return new CachingEventStore(eventStore, new OrderSnapshotSerializer(), maximumSize, "ordering-aggregates", meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "event-store.layout", havingValue = "bucketed")
+    BucketedRedisEventStore bucketedOrderingEventStore(RedisTemplate<String, String> redisTemplate, MessageCodec messageCodec,
+                                                       RedisOrderingEventStore eventStore,
+                                                       @Value("${event-store.bucketed.buckets:1024}") int buckets) {
+        return new BucketedRedisEventStore(redisTemplate, messageCodec, "ordering::", buckets, eventStore);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "event-store.layout", havingValue = "file")
+    MappedFileEventStore fileOrderingEventStore(@Value("${event-store.file.directory}") Path directory, MessageCodec messageCodec) {
+        return new MappedFileEventStore(directory.resolve("ordering"), messageCodec);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "event-store.bucketed.migrate-on-startup", havingValue = "true")
+    ApplicationRunner orderingEventStoreMigration(BucketedRedisEventStore eventStore) {
+        return args -> eventStore.migrateAll();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "event-store.archive.directory")
+    SegmentArchive orderingArchive(@Value("${event-store.archive.directory}") Path directory, MessageCodec messageCodec) {
+        return new SegmentArchive(directory.resolve("ordering"), messageCodec);
+    }
+
+    /**
+     * Only aggregates of the stream layout are archived, other layouts would keep serving events that were archived.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "event-store.archive.directory")
+    EventArchiver orderingEventArchiver(RedisOrderingEventStore eventStore, SegmentArchive archive,
+                                        @Value("${event-store.layout:stream}") String layout,
+                                        @Value("${event-store.archive.batch-size:1000}") int batchSize) {
+        if (!"stream".equals(layout)) {
+            throw new IllegalArgumentException("Archiving events requires the 'stream' event store layout, but it's '" + layout + "'");
+        }
+        return new EventArchiver(eventStore, new OrderSnapshotSerializer(), archive, batchSize);
+    }
+}
@@ -0,0 +1,70 @@
+package io.wkrzywiec.fooddelivery.ordering.application;
+
+import io.wkrzywiec.fooddelivery.commons.incoming.AddTip;
+import io.wkrzywiec.fooddelivery.commons.incoming.CancelOrder;
+import io.wkrzywiec.fooddelivery.commons.incoming.CreateOrder;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.ConsumerName;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisBatchStreamListener;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisStreamListener;
+import io.wkrzywiec.fooddelivery.ordering.OrderingFacade;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+
+@Slf4j
+@Component
+@Profile("redis")
+@RequiredArgsConstructor
+public class RedisCommandsChannelConsumer implements RedisBatchStreamListener {
+
+    private static final Set<String> MESSAGE_TYPES = RedisStreamListener.typeNames(List.of(
+            CreateOrder.class, CancelOrder.class, AddTip.class));
+
+    private final OrderingFacade facade;
+    private final MessageCodec codec;
+
+    @Override
+    public String streamName() {
+        return "ordering.commands";
+    }
+
+    @Override
+    public String group() {
+        return "ordering";
+    }
+
+    @Override
+    public String consumer() {
+        return ConsumerName.ofThisInstance();
+    }
+
+    @Override
+    public Set<String> messageTypes() {
+        return MESSAGE_TYPES;
+    }
+
+    @Override
+    public void onMessage(MapRecord<String, String, byte[]> message) {
+        log.info("Message received from {} stream, record id: {}", streamName(), message.getId());
+
+        var payloadMessage = message.getValue().get("payload");
+        var domainMessage = codec.decodeMessage(payloadMessage);
+        var body = domainMessage.body();
+
+        if (body instanceof CreateOrder createOrder) {
+            facade.handle(createOrder);
+        } else if (body instanceof CancelOrder cancelOrder) {
+            facade.handle(cancelOrder);
+        } else if (body instanceof AddTip addTip) {
+            facade.handle(addTip);
+        } else {
+            log.info("There is not logic for handling {} message", domainMessage.header().type());
+        }
+    }
+}
@@ -1,12 +1,8 @@
 package io.wkrzywiec.fooddelivery.ordering.application;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.wkrzywiec.fooddelivery.commons.incoming.AddTip;
-import io.wkrzywiec.fooddelivery.commons.incoming.CancelOrder;
-import io.wkrzywiec.fooddelivery.commons.incoming.CreateOrder;
-import io.wkrzywiec.fooddelivery.commons.infra.messaging.Header;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.MessageCodec;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.ConsumerName;
+import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisBatchStreamListener;
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.redis.RedisStreamListener;
 import io.wkrzywiec.fooddelivery.ordering.OrderingFacade;
 import io.wkrzywiec.fooddelivery.ordering.incoming.*;
@@ -16,14 +12,20 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.connection.stream.MapRecord;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.Set;
+
 @Slf4j
 @Component
 @Profile("redis")
 @RequiredArgsConstructor
-public class RedisOrdersChannelConsumer implements RedisStreamListener {
+public class RedisOrdersChannelConsumer implements RedisBatchStreamListener {
+
+    private static final Set<String> MESSAGE_TYPES = RedisStreamListener.typeNames(List.of(
+            FoodInPreparation.class, FoodDelivered.class));
 
     private final OrderingFacade facade;
-    private final ObjectMapper objectMapper;
+    private final MessageCodec codec;
 
     @Override
     public String streamName() {
@@ -37,37 +39,28 @@ public class RedisOrdersChannelConsumer implements RedisStreamListener {
 
     @Override
     public String consumer() {
-        return "1";
+        return ConsumerName.ofThisInstance();
     }
 
     @Override
-    public void onMessage(MapRecord<String, String, String> message) {
-        log.info("Message received from {} stream: {}", streamName(), message);
+    public Set<String> messageTypes() {
+        return MESSAGE_TYPES;
+    }
 
-        var payloadMessage = message.getValue().get("payload");
+    @Override
+    public void onMessage(MapRecord<String, String, byte[]> message) {
+        log.info("Message received from {} stream, record id: {}", streamName(), message.getId());
 
-        try {
-            var messageAsJson = objectMapper.readTree(payloadMessage);
-            Header header = map(messageAsJson.get("header"), Header.class);
+        var payloadMessage = message.getValue().get("payload");
+        var domainMessage = codec.decodeMessage(payloadMessage);
+        var body = domainMessage.body();
 
-            switch (header.type()) {
-                case "CreateOrder" -> facade.handle(mapMessageBody(messageAsJson, CreateOrder.class));
-                case "CancelOrder" -> facade.handle(mapMessageBody(messageAsJson, CancelOrder.class));
-                case "FoodInPreparation" -> facade.handle(mapMessageBody(messageAsJson, FoodInPreparation.class));
-                case "AddTip" -> facade.handle(mapMessageBody(messageAsJson, AddTip.class));
-                case "FoodDelivered" -> facade.handle(mapMessageBody(messageAsJson, FoodDelivered.class));
-                default -> log.info("There is not logic for handling {} message", header.type());
-            }
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
+        if (body instanceof FoodInPreparation foodInPreparation) {
+            facade.handle(foodInPreparation);
+        } else if (body instanceof FoodDelivered foodDelivered) {
+            facade.handle(foodDelivered);
+        } else {
+            log.info("There is not logic for handling {} message", domainMessage.header().type());
         }
     }
-
-    private <T> T mapMessageBody(JsonNode fullMessage, Class<T> valueType) throws JsonProcessingException {
-        return objectMapper.treeToValue(fullMessage.get("body"), valueType);
-    }
-
-    private <T> T map(JsonNode fullMessage, Class<T> valueType) throws JsonProcessingException {
-        return objectMapper.treeToValue(fullMessage, valueType);
-    }
 }
@@ -1,4 +1,6 @@
 package io.wkrzywiec.fooddelivery.ordering.incoming;
 
-public record FoodInPreparation(String orderId) {
+import io.wkrzywiec.fooddelivery.commons.event.DomainMessageBody;
+
+public record FoodInPreparation(String orderId) implements DomainMessageBody {
 }
@@ -1,6 +1,7 @@
 package io.wkrzywiec.fooddelivery.ordering
 
 
+import io.wkrzywiec.fooddelivery.commons.infra.IdGenerator
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.FakeMessagePublisher
 import io.wkrzywiec.fooddelivery.commons.infra.messaging.Message
 import io.wkrzywiec.fooddelivery.commons.incoming.AddTip
@@ -40,7 +41,7 @@ class OrderingFacadeSpec extends Specification {
     def setup() {
         eventStore = new InMemoryEventStore()
         publisher = new FakeMessagePublisher()
-        facade = new OrderingFacade(eventStore, publisher, testClock)
+        facade = new OrderingFacade(eventStore, publisher, testClock, IdGenerator.timeOrdered(testClock))
     }
 
     def "Create an order"() {
@@ -173,6 +174,50 @@ class OrderingFacadeSpec extends Specification {
         }
     }
 
+    def "Get an order as it was at a given time"() {
+        given:
+        var order = anOrder()
+        eventStore.store(message("orders", testClock, order.orderCreated()))
+        eventStore.store(message("orders", Clock.fixed(testTime.plusSeconds(60)), new OrderInProgress(order.id)))
+
+        expect:
+        facade.findOrder(order.id, testTime.plusSeconds(30)).get().status() == OrderStatus.CREATED
+        facade.findOrder(order.id, testTime.plusSeconds(90)).get().status() == OrderStatus.IN_PROGRESS
+        facade.findOrder(order.id, testTime.minusSeconds(30)).isEmpty()
+    }
+
+    def "Retry adding a tip when an order was changed in the meantime"() {
+        given:
+        eventStore = Spy(InMemoryEventStore)
+        facade = new OrderingFacade(eventStore, publisher, testClock, IdGenerator.timeOrdered(testClock))
+
+        var order = anOrder()
+        eventStore.store(message("orders", testClock, order.orderCreated()))
+
+        and: "Order is set to IN_PROGRESS by someone else right after it was read for the first time"
+        def firstRead = true
+        eventStore.getEventStream(order.id) >> {
+            def eventStream = callRealMethod()
+            if (firstRead) {
+                firstRead = false
+                eventStore.store(message("orders", testClock, new OrderInProgress(order.id)))
+            }
+            eventStream
+        }
+
+        when:
+        facade.handle(new AddTip(order.id, new BigDecimal(20)))
+
+        then: "Tip was added on top of the latest state of an order"
+        def storedEvents = eventStore.getEventsForOrder(order.getId())
+        storedEvents.size() == 3
+        storedEvents[2].body() instanceof TipAddedToOrder
+        Order.from(storedEvents).getStatus() == OrderStatus.IN_PROGRESS
+
+        and: "TipAddedToOrder event is published only once"
+        publisher.messages.get(ORDERS_CHANNEL).size() == 1
+    }
+
     def "Complete an order"() {
         given:
         var order = anOrder()
@@ -204,6 +249,29 @@ class OrderingFacadeSpec extends Specification {
         }
     }
 
+    def "Complete an order rebuilt from a snapshot"() {
+        given:
+        var order = anOrder().withStatus(OrderStatus.IN_PROGRESS)
+        eventStore.store(message("orders", testClock, OrderSnapshot.from(order.entity())))
+
+        and:
+        var foodDelivered = new FoodDelivered(order.id)
+
+        when:
+        facade.handle(foodDelivered)
+
+        then: "Order is completed"
+        def storedEvents = eventStore.getEventsForOrder(order.getId())
+        storedEvents.size() == 2
+        storedEvents[1].body() == new OrderCompleted(order.getId())
+
+        and:
+        with(Order.from(storedEvents)) {
+            it.status == OrderStatus.COMPLETED
+            it.total == order.entity().total
+        }
+    }
+
     private void verifyEventHeader(Message event, String orderId, String eventType) {
         def header = event.header()
         header.messageId() != null